@@ -0,0 +1,199 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads UTF-8 lines not longer than the specified length.
+ *
+ * <p>Unlike {@link java.io.BufferedReader#readLine()} the memory does not
+ * depend on the input: bytes are decoded into a reused buffer, characters
+ * beyond the maximum length are skipped up to the end of the line and
+ * the line is reported as truncated. Lines end with {@code \n}, {@code \r}
+ * or {@code \r\n}, malformed input is replaced.
+ *
+ * <p>Buffers are flipped through {@link Buffer} to run on Java 8
+ * where {@link ByteBuffer} does not override its methods.
+ *
+ * <p>It is NOT threadsafe.
+ */
+final class BoundedLineReader implements Closeable {
+  /**
+   * Default maximum length of a line.
+   */
+  static final int DEFAULT_MAX_LINE_LENGTH = 4096;
+
+  private static final int BUFFER_SIZE = 4096;
+  private static final int INITIAL_LINE_SIZE = 128;
+
+  private final InputStream in;
+  private final int maxLineLength;
+  private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+  private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+  /**
+   * Characters of the current line, it grows up to the maximum length.
+   */
+  private char[] line = new char[INITIAL_LINE_SIZE];
+  /**
+   * View of {@link #line} returned by {@link #readLineChars()}.
+   */
+  private CharBuffer lineView;
+  private boolean isEndOfInput;
+  private boolean isFlushed;
+  /**
+   * Whether the previous line ended with {@code \r},
+   * so {@code \n} right after it does not start a new line.
+   */
+  private boolean skipLineFeed;
+  private boolean isTruncated;
+
+  /**
+   * Constructor.
+   *
+   * @param in            input to read
+   * @param maxLineLength maximum length of a line
+   */
+  BoundedLineReader(final InputStream in, final int maxLineLength) {
+    if (maxLineLength <= 0) {
+      throw new IllegalArgumentException(String.valueOf(maxLineLength));
+    }
+    this.in = in;
+    this.maxLineLength = maxLineLength;
+    ((Buffer) bytes).flip();
+    ((Buffer) chars).flip();
+  }
+
+  /**
+   * Read the next line, characters beyond the maximum length are skipped.
+   *
+   * @return the line without the line terminator or null
+   *         in case of the end of the input
+   * @throws IOException in case of I/O errors
+   */
+  String readLine() throws IOException {
+    final int length = read();
+    return length < 0 ? null : String.valueOf(line, 0, length);
+  }
+
+  /**
+   * Read the next line without creating a string,
+   * characters beyond the maximum length are skipped.
+   *
+   * @return the line without the line terminator or null
+   *         in case of the end of the input,
+   *         the buffer is reused by the next read
+   * @throws IOException in case of I/O errors
+   */
+  CharSequence readLineChars() throws IOException {
+    final int length = read();
+    if (length < 0) {
+      return null;
+    }
+    if (lineView == null || lineView.array() != line) {
+      lineView = CharBuffer.wrap(line);
+    }
+    ((Buffer) lineView).clear();
+    ((Buffer) lineView).limit(length);
+    return lineView;
+  }
+
+  /**
+   * Read the next line into {@link #line}.
+   *
+   * @return length of the line or -1 in case of the end of the input
+   */
+  private int read() throws IOException {
+    isTruncated = false;
+    int length = 0;
+    boolean hasLine = false;
+    while (true) {
+      if (!chars.hasRemaining() && !fill()) {
+        return hasLine ? length : -1;
+      }
+      final char c = chars.get();
+      if (skipLineFeed) {
+        skipLineFeed = false;
+        if (c == '\n') {
+          continue;
+        }
+      }
+      hasLine = true;
+      if (c == '\n' || c == '\r') {
+        skipLineFeed = c == '\r';
+        return length;
+      }
+      if (length == maxLineLength) {
+        isTruncated = true;
+        continue;
+      }
+      if (length == line.length) {
+        line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+      }
+      line[length++] = c;
+    }
+  }
+
+  /**
+   * @return whether the last read line was longer than the maximum length
+   */
+  boolean isTruncated() {
+    return isTruncated;
+  }
+
+  /**
+   * Decode next characters.
+   *
+   * @return false in case of the end of the input
+   */
+  private boolean fill() throws IOException {
+    ((Buffer) chars).clear();
+    while (true) {
+      if (isFlushed) {
+        ((Buffer) chars).flip();
+        return false;
+      }
+      decoder.decode(bytes, chars, isEndOfInput);
+      if (isEndOfInput && !bytes.hasRemaining()) {
+        decoder.flush(chars);
+        isFlushed = true;
+      }
+      if (chars.position() > 0) {
+        ((Buffer) chars).flip();
+        return true;
+      }
+      if (isFlushed) {
+        // do not read after the end, a terminal would wait for it again
+        ((Buffer) chars).flip();
+        return false;
+      }
+      bytes.compact();
+      final int read = in.read(
+          bytes.array(), bytes.position(), bytes.remaining());
+      if (read < 0) {
+        isEndOfInput = true;
+      } else {
+        ((Buffer) bytes).position(bytes.position() + read);
+      }
+      ((Buffer) bytes).flip();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+}
+
+// End BoundedLineReader.java
@@ -0,0 +1,42 @@
+package ru.nuyanzin.quizshell;
+
+/**
+ * Class of learners getting the same tasks from a teacher.
+ *
+ * <p>The teacher publishes a {@link TaskBatch}, sessions of learners
+ * who joined the class check for a new batch before every prompt.
+ * Checking is a read of a volatile field and the batch is shared,
+ * so every learner costs almost nothing to the teacher.
+ * Classes are registered by name in {@link Classrooms}.
+ */
+final class Classroom {
+  private final String name;
+  private volatile TaskBatch batch;
+
+  Classroom(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Give the batch to all the learners of the class.
+   *
+   * @param batch the batch
+   */
+  void publish(final TaskBatch batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * @return the last published batch or null
+   */
+  TaskBatch getBatch() {
+    return batch;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
+
+// End Classroom.java
@@ -0,0 +1,47 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Classes of learners by name, sessions sharing a registry could
+ * broadcast tasks to each other's classes.
+ *
+ * <p>By default all the sessions of the process share
+ * {@link #global()}, a host application could isolate groups
+ * of sessions giving them their own registries.
+ */
+public final class Classrooms {
+  /**
+   * Classes of sessions which are not given another registry.
+   */
+  private static final Classrooms GLOBAL = new Classrooms();
+
+  private final ConcurrentMap<String, Classroom> classrooms =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   */
+  public Classrooms() {
+  }
+
+  /**
+   * @return classes of sessions which are not given another registry
+   */
+  public static Classrooms global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Get the class, it is created on the first use.
+   *
+   * @param name name of the class
+   * @return the class
+   */
+  Classroom get(final String name) {
+    return classrooms.computeIfAbsent(name, Classroom::new);
+  }
+}
+
+// End Classrooms.java
@@ -0,0 +1,336 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live statistics of all the sessions of a cohort:
+ * tasks served and answers per operation, the fastest correct answers
+ * and errors of the user input per category.
+ *
+ * <p>Operations are task shapes independent of their spelling, at most
+ * {@link #MAX_OPERATIONS} of them are counted separately and the rest
+ * are counted together as {@link #OTHER_OPERATIONS}, so learners
+ * can not grow the statistics with new {@code expr} shapes.
+ *
+ * <p>Counters are striped {@link LongAdder}s, the fastest answers are kept
+ * in shards with a lock per shard, and an answer slower than the slowest
+ * one of its shard does not take the lock at all. So sessions
+ * do not contend on the statistics.
+ */
+public final class CohortStats {
+  /**
+   * Number of the fastest answers to keep.
+   */
+  static final int TOP_SIZE = 10;
+
+  /**
+   * Maximum number of operations counted separately.
+   */
+  static final int MAX_OPERATIONS = 64;
+
+  /**
+   * Name of the operation counting the operations beyond the maximum.
+   */
+  public static final String OTHER_OPERATIONS = "*";
+
+  /**
+   * Number of shards of the fastest answers, power of 2.
+   */
+  private static final int SHARDS = 16;
+
+  /**
+   * Statistics of sessions which are not given another cohort.
+   */
+  private static final CohortStats GLOBAL = new CohortStats();
+
+  private final ConcurrentMap<String, Operation> operations =
+      new ConcurrentHashMap<>();
+  private final Operation otherOperations = new Operation(OTHER_OPERATIONS);
+  private final Shard[] shards = new Shard[SHARDS];
+  /**
+   * Errors of the user input per category.
+   */
+  private final LongAdder[] errors =
+      new LongAdder[QuizShellException.Category.values().length];
+
+  /**
+   * Constructor.
+   */
+  public CohortStats() {
+    for (int i = 0; i < SHARDS; i++) {
+      shards[i] = new Shard();
+    }
+    for (int i = 0; i < errors.length; i++) {
+      errors[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * @return statistics of sessions which are not given another cohort
+   */
+  public static CohortStats global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Get counters of the operation, they should be kept by the caller
+   * to not look them up for every answer.
+   *
+   * @param shape shape of tasks of the operation
+   * @return the counters
+   */
+  Operation operation(final TaskShape shape) {
+    final String template = shape.getNormalizedTemplate();
+    final Operation operation = operations.get(template);
+    if (operation != null) {
+      return operation;
+    }
+    // concurrent sessions could exceed the maximum by a few operations
+    return operations.size() >= MAX_OPERATIONS
+        ? otherOperations
+        : operations.computeIfAbsent(template, Operation::new);
+  }
+
+  /**
+   * Offer the correct answer to the fastest answers.
+   *
+   * @param learner name of the learner
+   * @param millis  time to answer in milliseconds
+   * @param task    the task, it is copied only if the answer is kept
+   * @param answer  the answer
+   */
+  void offerCorrectAnswer(final String learner, final long millis,
+                          final CharSequence task, final int answer) {
+    final Shard shard = shards[(int) Thread.currentThread().getId()
+        & (SHARDS - 1)];
+    if (millis >= shard.threshold) {
+      return;
+    }
+    synchronized (shard) {
+      shard.offer(learner, millis, task, answer);
+    }
+  }
+
+  /**
+   * Count an error of the user input.
+   *
+   * @param category category of the error
+   */
+  void error(final QuizShellException.Category category) {
+    errors[category.ordinal()].increment();
+  }
+
+  /**
+   * Take a snapshot of the statistics while sessions go on.
+   *
+   * <p>Counters of an operation are read in the reverse order of
+   * their increments, so a snapshot never has more correct answers
+   * than answers.
+   *
+   * @return snapshot of the statistics
+   */
+  public Snapshot snapshot() {
+    final Map<String, long[]> counters = new LinkedHashMap<>();
+    for (Operation operation : new TreeMap<>(operations).values()) {
+      counters.put(operation.template, operation.sum());
+    }
+    final long[] other = otherOperations.sum();
+    if (other[0] > 0) {
+      counters.put(OTHER_OPERATIONS, other);
+    }
+    final List<Answer> fastest = new ArrayList<>();
+    for (Shard shard : shards) {
+      synchronized (shard) {
+        fastest.addAll(Arrays.asList(shard.answers).subList(0, shard.size));
+      }
+    }
+    fastest.sort(Comparator.comparingLong(Answer::getMillis));
+    final long[] errorCounts = new long[errors.length];
+    for (int i = 0; i < errors.length; i++) {
+      errorCounts[i] = errors[i].sum();
+    }
+    return new Snapshot(counters, Collections.unmodifiableList(
+        fastest.subList(0, Math.min(TOP_SIZE, fastest.size()))),
+        errorCounts);
+  }
+
+  /**
+   * Counters of an operation.
+   */
+  static final class Operation {
+    private final String template;
+    private final LongAdder served = new LongAdder();
+    private final LongAdder answers = new LongAdder();
+    private final LongAdder correct = new LongAdder();
+
+    private Operation(String template) {
+      this.template = template;
+    }
+
+    /**
+     * Read the counters in the reverse order of their increments.
+     *
+     * @return served tasks, answers and correct answers
+     */
+    private long[] sum() {
+      final long correctSum = correct.sum();
+      final long answersSum = answers.sum();
+      return new long[] {served.sum(), answersSum, correctSum};
+    }
+
+    void served() {
+      served.increment();
+    }
+
+    void answered(boolean isCorrect) {
+      answers.increment();
+      if (isCorrect) {
+        correct.increment();
+      }
+    }
+  }
+
+  /**
+   * Fastest answers of a shard sorted by time.
+   */
+  private static final class Shard {
+    private final Answer[] answers = new Answer[TOP_SIZE];
+    private int size;
+    /**
+     * Time of the slowest kept answer if the shard is full,
+     * slower answers are not kept.
+     */
+    private volatile long threshold = Long.MAX_VALUE;
+
+    private void offer(String learner, long millis, CharSequence task,
+                       int answer) {
+      if (millis >= threshold) {
+        return;
+      }
+      int i = size < TOP_SIZE ? size++ : TOP_SIZE - 1;
+      while (i > 0 && answers[i - 1].millis > millis) {
+        answers[i] = answers[i - 1];
+        i--;
+      }
+      answers[i] = new Answer(learner, millis, task.toString() + answer);
+      if (size == TOP_SIZE) {
+        threshold = answers[TOP_SIZE - 1].millis;
+      }
+    }
+  }
+
+  /**
+   * Correct answer.
+   */
+  public static final class Answer {
+    private final String learner;
+    private final long millis;
+    private final String task;
+
+    private Answer(String learner, long millis, String task) {
+      this.learner = learner;
+      this.millis = millis;
+      this.task = task;
+    }
+
+    /**
+     * @return name of the learner who answered
+     */
+    public String getLearner() {
+      return learner;
+    }
+
+    /**
+     * @return milliseconds from serving the task to the answer
+     */
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * @return the task with the answer
+     */
+    public String getTask() {
+      return task;
+    }
+  }
+
+  /**
+   * Statistics at some moment.
+   */
+  public static final class Snapshot {
+    /**
+     * Template of operation to served tasks, answers and correct answers.
+     */
+    private final Map<String, long[]> counters;
+    private final List<Answer> fastest;
+    private final long[] errors;
+
+    private Snapshot(Map<String, long[]> counters, List<Answer> fastest,
+                     long[] errors) {
+      this.counters = counters;
+      this.fastest = fastest;
+      this.errors = errors;
+    }
+
+    /**
+     * @return operations (normalized templates of task shapes)
+     *         in alphabetical order and then {@link #OTHER_OPERATIONS}
+     *         if there are tasks of other operations
+     */
+    public Iterable<String> getOperations() {
+      return counters.keySet();
+    }
+
+    /**
+     * @param operation one of {@link #getOperations()}
+     * @return number of tasks of the operation served
+     */
+    public long getServed(String operation) {
+      return counters.get(operation)[0];
+    }
+
+    /**
+     * @param operation one of {@link #getOperations()}
+     * @return number of answers to tasks of the operation
+     */
+    public long getAnswers(String operation) {
+      return counters.get(operation)[1];
+    }
+
+    /**
+     * @param operation one of {@link #getOperations()}
+     * @return number of correct answers to tasks of the operation
+     */
+    public long getCorrect(String operation) {
+      return counters.get(operation)[2];
+    }
+
+    /**
+     * @return the fastest correct answers, the fastest first
+     */
+    public List<Answer> getFastest() {
+      return fastest;
+    }
+
+    /**
+     * @param category category of errors
+     * @return number of errors of the user input of the category
+     */
+    public long getErrors(QuizShellException.Category category) {
+      return errors[category.ordinal()];
+    }
+  }
+}
+
+// End CohortStats.java
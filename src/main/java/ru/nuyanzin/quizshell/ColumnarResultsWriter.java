@@ -0,0 +1,290 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Writes results in a compact binary columnar format.
+ *
+ * <p>File format: int magic 'QSRC', int version and then blocks,
+ * one block per {@link ResultsBatch}. Every block starts with int length
+ * and int CRC32 of the rest of the block, so a block torn by a crash
+ * is detected and truncated before the next append.
+ * All the numbers of the rest are varints, signed ones are zigzag encoded:
+ * <pre>
+ * number of rows
+ * number of shapes in the dictionary, then every template
+ *   as the length and UTF-8 bytes
+ * timestamps: the first one and then deltas to the previous one
+ * shapes: indexes in the dictionary
+ * operands: all the operands of all the rows,
+ *   the number of operands of a row is defined by its shape
+ * answers
+ * correctness: a bit per row
+ * </pre>
+ */
+final class ColumnarResultsWriter extends ResultsWriter {
+  private static final int MAGIC = 0x51535243;
+  private static final int VERSION = 2;
+
+  /**
+   * Size of the length and the checksum of a block.
+   */
+  private static final int BLOCK_HEADER_SIZE = 8;
+
+  /**
+   * Maximum length of a block, longer lengths are corrupted.
+   */
+  private static final int MAX_BLOCK_LENGTH = 64 << 20;
+
+  /**
+   * Buffers reused for every batch, they are used only by the writer thread.
+   */
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final Map<TaskShape, Integer> dictionary = new IdentityHashMap<>();
+  private final List<TaskShape> shapes = new ArrayList<>();
+  private final CRC32 checksum = new CRC32();
+
+  ColumnarResultsWriter(Path path) {
+    super(path);
+  }
+
+  @Override
+  protected void writeHeader(OutputStream out) throws IOException {
+    out.write(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).array());
+  }
+
+  @Override
+  void encode(ResultsBatch batch, OutputStream out) throws IOException {
+    buffer.reset();
+    dictionary.clear();
+    shapes.clear();
+    final int size = batch.size();
+    for (int row = 0; row < size; row++) {
+      final TaskShape shape = batch.getShape(row);
+      if (!dictionary.containsKey(shape)) {
+        dictionary.put(shape, shapes.size());
+        shapes.add(shape);
+      }
+    }
+    writeVarLong(buffer, size);
+    writeVarLong(buffer, shapes.size());
+    for (TaskShape shape : shapes) {
+      final byte[] template =
+          shape.getTemplate().getBytes(StandardCharsets.UTF_8);
+      writeVarLong(buffer, template.length);
+      buffer.write(template);
+    }
+    long previous = 0;
+    for (int row = 0; row < size; row++) {
+      writeVarLong(buffer, zigzag(batch.getTimestamp(row) - previous));
+      previous = batch.getTimestamp(row);
+    }
+    for (int row = 0; row < size; row++) {
+      writeVarLong(buffer, dictionary.get(batch.getShape(row)));
+    }
+    for (int row = 0; row < size; row++) {
+      final int offset = batch.getOperandsOffset(row);
+      for (int i = 0; i < batch.getOperandsCount(row); i++) {
+        writeVarLong(buffer, zigzag(batch.getOperand(offset + i)));
+      }
+    }
+    for (int row = 0; row < size; row++) {
+      writeVarLong(buffer, zigzag(batch.getAnswer(row)));
+    }
+    int bits = 0;
+    for (int row = 0; row < size; row++) {
+      if (batch.isCorrect(row)) {
+        bits |= 1 << (row & 7);
+      }
+      if ((row & 7) == 7 || row == size - 1) {
+        buffer.write(bits);
+        bits = 0;
+      }
+    }
+    checksum.reset();
+    checksum.update(buffer.toByteArray());
+    out.write(ByteBuffer.allocate(BLOCK_HEADER_SIZE)
+        .putInt(buffer.size()).putInt((int) checksum.getValue()).array());
+    buffer.writeTo(out);
+  }
+
+  @Override
+  long validLength(Path path) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      try {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+          return -1;
+        }
+      } catch (EOFException e) {
+        return -1;
+      }
+      long length = 8;
+      byte[] block;
+      while ((block = readBlockBytes(in)) != null) {
+        length += BLOCK_HEADER_SIZE + block.length;
+      }
+      return length;
+    }
+  }
+
+  /**
+   * Read the next block without its length and checksum.
+   *
+   * @return the block or null if there are no more complete blocks
+   */
+  private static byte[] readBlockBytes(DataInputStream in)
+      throws IOException {
+    try {
+      final int length = in.readInt();
+      final int expected = in.readInt();
+      if (length < 0 || length > MAX_BLOCK_LENGTH) {
+        return null;
+      }
+      final byte[] block = new byte[length];
+      in.readFully(block);
+      final CRC32 crc = new CRC32();
+      crc.update(block);
+      return (int) crc.getValue() == expected ? block : null;
+    } catch (EOFException e) {
+      // the block is torn by a crash
+      return null;
+    }
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException(Loc.getLocMessage("results-wrong-format"));
+  }
+
+  /**
+   * Read the next block, a torn last block is ignored.
+   *
+   * @param data stream to read from
+   * @return the block or null if there are no more blocks
+   * @throws IOException in case of I/O errors
+   */
+  static ResultsBatch readBlock(DataInputStream data) throws IOException {
+    final byte[] block = readBlockBytes(data);
+    if (block == null) {
+      return null;
+    }
+    final DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(block));
+    final int size = (int) readVarLong(in);
+    final TaskShape[] dictionary = new TaskShape[(int) readVarLong(in)];
+    for (int i = 0; i < dictionary.length; i++) {
+      final byte[] template = new byte[(int) readVarLong(in)];
+      in.readFully(template);
+      dictionary[i] = TaskShape.compile(
+          StandardCharsets.UTF_8.decode(ByteBuffer.wrap(template)).toString());
+    }
+    final long[] timestamps = new long[size];
+    long previous = 0;
+    for (int row = 0; row < size; row++) {
+      previous += unzigzag(readVarLong(in));
+      timestamps[row] = previous;
+    }
+    final TaskShape[] rowShapes = new TaskShape[size];
+    for (int row = 0; row < size; row++) {
+      rowShapes[row] = dictionary[(int) readVarLong(in)];
+    }
+    final int[][] operands = new int[size][];
+    for (int row = 0; row < size; row++) {
+      operands[row] = new int[rowShapes[row].getOperandCount()];
+      for (int i = 0; i < operands[row].length; i++) {
+        operands[row][i] = (int) unzigzag(readVarLong(in));
+      }
+    }
+    final int[] answers = new int[size];
+    for (int row = 0; row < size; row++) {
+      answers[row] = (int) unzigzag(readVarLong(in));
+    }
+    final ResultsBatch batch = new ResultsBatch(Math.max(size, 1));
+    int bits = 0;
+    for (int row = 0; row < size; row++) {
+      if ((row & 7) == 0) {
+        bits = in.readUnsignedByte();
+      }
+      batch.add(timestamps[row], rowShapes[row], operands[row],
+          answers[row], (bits & 1 << (row & 7)) != 0);
+    }
+    return batch;
+  }
+
+  /**
+   * Print the results file as CSV.
+   *
+   * @param args name of the file
+   * @throws IOException in case of I/O errors
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.out.println(Loc.getLocMessage("usage-results"));
+      return;
+    }
+    final Path path = Paths.get(args[0]);
+    final StringBuilder buffer = new StringBuilder();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(Loc.getLocMessage("results-wrong-format"));
+      }
+      System.out.write(
+          CsvResultsWriter.HEADER.getBytes(StandardCharsets.UTF_8));
+      ResultsBatch batch;
+      while ((batch = readBlock(in)) != null) {
+        buffer.setLength(0);
+        CsvResultsWriter.format(batch, buffer);
+        System.out.write(
+            buffer.toString().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    System.out.flush();
+  }
+}
+
+// End ColumnarResultsWriter.java
@@ -0,0 +1,136 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.Arrays;
+
+/**
+ * Resolves command names to command indexes.
+ *
+ * <p>Names and aliases are stored in a case-folding trie, the name is
+ * matched directly against the characters of the command line, so
+ * resolving does not allocate. Besides the full names any prefix
+ * which belongs to only one command is accepted, e.g. {@code pl}
+ * for {@code plus}.
+ *
+ * <p>Instances are immutable and are shared by all the shells.
+ */
+final class CommandResolver {
+  /**
+   * Returned if there is no command with such a name or prefix.
+   */
+  static final int UNKNOWN = -1;
+
+  /**
+   * Returned if the prefix belongs to several commands.
+   */
+  static final int AMBIGUOUS = -2;
+
+  private final Node root = new Node();
+  private final String[] names;
+
+  /**
+   * Constructor.
+   *
+   * @param commands names of commands, the first name of every command
+   *                 is its main name others are aliases,
+   *                 the index of a command is its index in the array
+   */
+  CommandResolver(final String[]... commands) {
+    names = new String[commands.length];
+    for (int i = 0; i < commands.length; i++) {
+      names[i] = commands[i][0];
+      for (String name : commands[i]) {
+        add(name, i);
+      }
+    }
+  }
+
+  private void add(String name, int command) {
+    Node node = root;
+    for (int i = 0; i < name.length(); i++) {
+      node = node.child(fold(name.charAt(i)), true);
+      node.prefixCommand = node.prefixCommand == UNKNOWN
+          || node.prefixCommand == command ? command : AMBIGUOUS;
+    }
+    node.command = command;
+  }
+
+  private static char fold(char c) {
+    if (c >= 'a' && c <= 'z') {
+      return (char) (c - ('a' - 'A'));
+    }
+    return c < 0x80 ? c : Character.toUpperCase(c);
+  }
+
+  /**
+   * @return number of commands
+   */
+  int size() {
+    return names.length;
+  }
+
+  /**
+   * @param command index of the command
+   * @return main name of the command
+   */
+  String getName(int command) {
+    return names[command];
+  }
+
+  /**
+   * Resolve the command name.
+   *
+   * @param line  command line
+   * @param start start of the name in the line
+   * @param end   end (exclusive) of the name in the line
+   * @return index of the command, {@link #UNKNOWN} or {@link #AMBIGUOUS}
+   */
+  int resolve(final CharSequence line, final int start, final int end) {
+    if (start == end) {
+      return UNKNOWN;
+    }
+    Node node = root;
+    for (int i = start; i < end && node != null; i++) {
+      node = node.child(fold(line.charAt(i)), false);
+    }
+    if (node == null) {
+      return UNKNOWN;
+    }
+    return node.command != UNKNOWN ? node.command : node.prefixCommand;
+  }
+
+  /**
+   * Node of the trie.
+   */
+  private static final class Node {
+    private char[] keys = new char[0];
+    private Node[] children = new Node[0];
+    /**
+     * Command with the name ending at this node.
+     */
+    private int command = UNKNOWN;
+    /**
+     * Command of all the names going through this node
+     * or {@link #AMBIGUOUS} if there are several.
+     */
+    private int prefixCommand = UNKNOWN;
+
+    private Node child(char key, boolean create) {
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key) {
+          return children[i];
+        }
+      }
+      if (!create) {
+        return null;
+      }
+      final Node child = new Node();
+      keys = Arrays.copyOf(keys, keys.length + 1);
+      children = Arrays.copyOf(children, children.length + 1);
+      keys[keys.length - 1] = key;
+      children[children.length - 1] = child;
+      return child;
+    }
+  }
+}
+
+// End CommandResolver.java
@@ -0,0 +1,110 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes results as CSV with columns
+ * {@code timestamp,shape,operands,answer,correct},
+ * operands are separated with spaces.
+ */
+final class CsvResultsWriter extends ResultsWriter {
+  static final String HEADER = "timestamp,shape,operands,answer,correct\n";
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Buffer reused for every batch, it is used only by the writer thread.
+   */
+  private final StringBuilder buffer = new StringBuilder();
+
+  CsvResultsWriter(Path path) {
+    super(path);
+  }
+
+  @Override
+  protected void writeHeader(OutputStream out) throws IOException {
+    out.write(HEADER.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * The file is valid up to its last line end,
+   * it has another format if it does not start with the header.
+   */
+  @Override
+  long validLength(Path path) throws IOException {
+    final byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+    try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      if (channel.size() < header.length) {
+        return -1;
+      }
+      channel.read(buffer, 0);
+      ((Buffer) buffer).flip();
+      for (byte b : header) {
+        if (!buffer.hasRemaining() || buffer.get() != b) {
+          return -1;
+        }
+      }
+      // find the last line end from the end of the file
+      long position = channel.size();
+      while (position > header.length) {
+        final long start = Math.max(header.length, position - BUFFER_SIZE);
+        ((Buffer) buffer).clear();
+        ((Buffer) buffer).limit((int) (position - start));
+        while (buffer.hasRemaining()
+            && channel.read(buffer, start + buffer.position()) > 0) {
+          // read the whole chunk
+        }
+        for (int i = buffer.position() - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+            return start + i + 1;
+          }
+        }
+        position = start;
+      }
+      return header.length;
+    }
+  }
+
+  @Override
+  void encode(ResultsBatch batch, OutputStream out) throws IOException {
+    buffer.setLength(0);
+    format(batch, buffer);
+    out.write(buffer.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Append rows of the batch as CSV lines.
+   *
+   * @param batch  batch to format
+   * @param buffer buffer to append to
+   */
+  static void format(ResultsBatch batch, StringBuilder buffer) {
+    for (int row = 0; row < batch.size(); row++) {
+      final int offset = batch.getOperandsOffset(row);
+      final int count = batch.getOperandsCount(row);
+      buffer.append(batch.getTimestamp(row))
+          .append(',').append(batch.getShape(row).getTemplate())
+          .append(',');
+      for (int i = 0; i < count; i++) {
+        if (i > 0) {
+          buffer.append(' ');
+        }
+        buffer.append(batch.getOperand(offset + i));
+      }
+      buffer.append(',').append(batch.getAnswer(row))
+          .append(',').append(batch.isCorrect(row))
+          .append('\n');
+    }
+  }
+}
+
+// End CsvResultsWriter.java
@@ -1,44 +1,100 @@
 package ru.nuyanzin.quizshell;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.NumberFormat;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.function.BiFunction;
-import java.util.function.Supplier;
 
 /**
  * Class for general commands.
  */
 public final class GeneralCommands implements Commands {
   /**
-   * Integer instance to parse integers only.
-   * It is NOT threadsafe but here there is
-   * no multithreading => that is currently ok.
+   * Value of {@link #parseAnswer(CharSequence)} for not a number.
    */
-  private static final NumberFormat INTEGER_INSTANCE;
+  private static final long NOT_A_NUMBER = Long.MIN_VALUE;
 
-  static {
-    INTEGER_INSTANCE = NumberFormat.getIntegerInstance(Locale.ROOT);
-    INTEGER_INSTANCE.setParseIntegerOnly(false);
-  }
+  /**
+   * Mark of the answer in the answer message to split it.
+   */
+  private static final String ANSWER_MARK = "\u0000";
 
   /**
    * Regex to split command line arguments.
    */
   private static final String COMMAND_OPTIONS_REGEX = "\\s+";
+
+  /**
+   * Maximum number of tasks broadcast to a class, the batch is kept
+   * in memory until the next broadcast.
+   */
+  static final int MAX_BROADCAST_TASKS = 10_000;
+
   /**
    * Instance of the shell.
    */
   private final QuizShell shell;
 
-  private final Random random = new Random();
+  private final Random random;
+
+  /**
+   * Format to parse integers of command arguments.
+   * It is NOT threadsafe, so every session has its own.
+   */
+  private final NumberFormat integerFormat =
+      NumberFormat.getIntegerInstance(Locale.ROOT);
+
+  /**
+   * Answers not yet handed over to the results writer.
+   */
+  private ResultsBatch resultsBatch;
+
+  /**
+   * Drill in progress or null.
+   */
+  private SessionCheckpoint.Drill drill;
+
+  /**
+   * Class the learner joined or null.
+   */
+  private Classroom classroom;
+
+  /**
+   * The last batch of the class given to the learner.
+   */
+  private TaskBatch classroomBatch;
+
+  /**
+   * Reused buffers of the current task and answer, both are ASCII,
+   * so tasks are asked without allocations.
+   */
+  private byte[] taskBuffer = new byte[64];
+  private int taskLength;
+  private byte[] answerBuffer = new byte[16];
+
+  /**
+   * Feedback messages of {@link #feedbackLoc} encoded to UTF-8:
+   * the message before the answer and after it for correct
+   * and wrong answers.
+   */
+  private Loc feedbackLoc;
+  private byte[] answerPrefix;
+  private byte[] correctAnswerSuffix;
+  private byte[] wrongAnswerSuffix;
+
+  /**
+   * Statistics of the session.
+   */
+  private long tasks;
+  private long answers;
+  private long correctAnswers;
+
   /**
    * Constructor.
    *
@@ -46,6 +102,9 @@ public final class GeneralCommands implements Commands {
    */
   public GeneralCommands(final QuizShell quizShell) {
     this.shell = quizShell;
+    this.random = quizShell.getRandom();
+    // not integer only, so "1.5" is parsed as a double and rejected
+    integerFormat.setParseIntegerOnly(false);
   }
 
   /**
@@ -54,76 +113,425 @@ public GeneralCommands(final QuizShell quizShell) {
    * @param line        full command line
    */
   public void plus(final String line) {
-    String[] parts = line.trim().split(COMMAND_OPTIONS_REGEX);
-    int[] args = parseIntegersOrThrow(
-        Loc.getLocMessage("number-of-tasks-should-be-number"), parts);
-    final int numOfTasks = getNumOfTasks(args);
-    final int maxNumber = getMaxNumber(args);
-    final BiFunction<Integer, Integer, Integer> result =
-        (integer, integer2) -> integer + integer2;
-    final BiFunction<Integer, Integer, String> output =
-        (integer, integer2) -> integer + " + " + integer2 + " = ";
-    Supplier<Integer> numberGenerator =
-        () -> Math.abs(random.nextInt() % maxNumber);
-    doTask(numOfTasks, result, output, numberGenerator);
-  }
-
-  private void doTask(int numOfTasks,
-                      BiFunction<Integer, Integer, Integer> resultFunction,
-                      BiFunction<Integer, Integer, String> output,
-                      Supplier<Integer> numberGenerator) {
-    Scanner scanner = new Scanner(System.in, StandardCharsets.UTF_8.name());
-    for (int i = 0; i < numOfTasks; i++) {
-      int first = numberGenerator.get();
-      int second = numberGenerator.get();
-      int userAnswer = Integer.MIN_VALUE;
-      final String taskNumber = i + 1 + ") ";
-      shell.output(taskNumber + output.apply(first, second), false);
-      final int result = resultFunction.apply(first, second);
-      do {
-        String answer = scanner.nextLine();
-        userAnswer = getUserAnswer(userAnswer, answer);
-        if (userAnswer != result) {
-          shell.output(Loc.getLocMessage("answer", answer)
-              + Loc.getLocMessage("not-correct-answer"));
-          shell.output(taskNumber + output.apply(first, second), false);
+    int[] args = parseIntegersOrThrow("number-of-tasks-should-be-number",
+        splitOptions(line));
+    doTask(getNumOfTasks(args), TaskShape.PLUS_SHAPE, getMaxNumber(args));
+  }
+
+  /**
+   * Start a drill, tasks of the drill are generated with its own random
+   * so they could be generated again on resume from a checkpoint.
+   */
+  private void doTask(int numOfTasks, TaskShape shape, int maxNumber) {
+    final long seed = random.nextLong();
+    final TaskEngine engine = newEngine(shape, maxNumber, seed);
+    drill = new SessionCheckpoint.Drill(
+        shape.getTemplate(), maxNumber, numOfTasks, seed);
+    if (shell.getCheckpoint() != null) {
+      shell.getCheckpoint().drillStarted(drill);
+    }
+    runDrill(engine);
+  }
+
+  /**
+   * Command broadcast to give the same tasks to all the learners
+   * of the class e.g. {@code broadcast 5a 5 20 _ + _}.
+   *
+   * @param line        full command line
+   */
+  public void broadcast(final String line) {
+    String[] parts = line.trim().split(COMMAND_OPTIONS_REGEX, 4);
+    if (parts.length < 3) {
+      shell.output(shell.getLoc().getMessage("usage-broadcast"));
+      return;
+    }
+    int[] args = parseIntegersOrThrow("number-of-tasks-should-be-number",
+        parts[1], parts[2]);
+    if (args == null) {
+      return;
+    }
+    if (args[0] > MAX_BROADCAST_TASKS) {
+      shell.output(shell.getLoc().getMessage("broadcast-too-many-tasks",
+          MAX_BROADCAST_TASKS));
+      return;
+    }
+    final TaskShape shape = parts.length == 4
+        ? TaskShape.compile(parts[3]) : TaskShape.PLUS_SHAPE;
+    final long seed = random.nextLong();
+    final TaskBatch batch = TaskBatch.generate(
+        newEngine(shape, args[1], seed), Math.max(args[0], 0), seed);
+    shell.getClassrooms().get(parts[0]).publish(batch);
+    shell.output(shell.getLoc().getMessage("broadcast-published",
+        batch.size(), shape.getTemplate(), parts[0]));
+  }
+
+  /**
+   * Command join to get tasks broadcast to the class.
+   *
+   * @param line        full command line
+   */
+  public void join(final String line) {
+    final String[] parts = shell.split(line.trim());
+    if (parts.length != 1 || parts[0].isEmpty()) {
+      shell.output(shell.getLoc().getMessage("usage-join"));
+      return;
+    }
+    classroom = shell.getClassrooms().get(parts[0]);
+    classroomBatch = null;
+    shell.output(shell.getLoc().getMessage("classroom-joined", classroom));
+    checkClassroom();
+  }
+
+  /**
+   * Give the learner tasks of the class if there are new ones,
+   * it is checked before every prompt.
+   */
+  void checkClassroom() {
+    if (classroom == null) {
+      return;
+    }
+    final TaskBatch batch = classroom.getBatch();
+    if (batch == null || batch == classroomBatch) {
+      return;
+    }
+    classroomBatch = batch;
+    shell.output(shell.getLoc().getMessage("classroom-tasks", classroom));
+    drill = new SessionCheckpoint.Drill(batch.getShape().getTemplate(),
+        batch.getMaxNumber(), batch.size(), batch.getSeed());
+    if (shell.getCheckpoint() != null) {
+      shell.getCheckpoint().drillStarted(drill);
+    }
+    runDrill(new TaskEngine(batch));
+  }
+
+  /**
+   * Continue the drill from a checkpoint.
+   *
+   * @param resumed drill of the checkpoint
+   */
+  void resume(final SessionCheckpoint.Drill resumed) {
+    final TaskEngine engine = newEngine(
+        TaskShape.compile(resumed.getTemplate()), resumed.getMaxNumber(),
+        resumed.getSeed());
+    // skip the already answered tasks
+    for (int i = 0; i < resumed.getNext(); i++) {
+      engine.next();
+    }
+    drill = resumed;
+    // the snapshot of the session start has no drill
+    if (shell.getCheckpoint() != null) {
+      shell.getCheckpoint().drillStarted(drill);
+    }
+    shell.output(shell.getLoc().getMessage("checkpoint-resumed",
+        resumed.getNext() + 1, resumed.getTotal(), resumed.getTemplate()));
+    runDrill(engine);
+  }
+
+  private void runDrill(TaskEngine engine) {
+    boolean isInputEnded = false;
+    try {
+      isInputEnded = askTasks(engine);
+    } catch (IOException e) {
+      shell.handleException(e);
+    } finally {
+      flushResults();
+      // a drill interrupted by the end of the session input is kept
+      // to be resumed, the end of a script ends only the script
+      if (isInputEnded && shell.isScriptRunning()) {
+        shell.output(shell.getLoc().getMessage("drill-abandoned",
+            drill.getNext(), drill.getTotal()));
+      }
+      if (!isInputEnded || shell.isScriptRunning()) {
+        drill = null;
+        if (shell.getCheckpoint() != null) {
+          shell.getCheckpoint().drillEnded();
+        }
+      }
+    }
+  }
+
+  /**
+   * Ask tasks of the drill.
+   *
+   * @return true if the input ended before the drill
+   */
+  private boolean askTasks(TaskEngine engine) throws IOException {
+    final CohortStats cohort = shell.getCohort();
+    final CohortStats.Operation operation =
+        cohort.operation(engine.getShape());
+    final SessionCheckpoint checkpoint = shell.getCheckpoint();
+    final SessionJournal.Recorder journal = shell.getJournal();
+    updateFeedback();
+    while (drill.getNext() < drill.getTotal()) {
+      engine.next();
+      operation.served();
+      final byte[] encodedTask = engine.getEncodedTask();
+      if (encodedTask == null) {
+        renderTask(drill.getNext() + 1, engine.getText());
+      }
+      outputTask(encodedTask);
+      if (journal != null) {
+        if (encodedTask != null) {
+          journal.task(encodedTask, 0, encodedTask.length);
         } else {
-          shell.output(Loc.getLocMessage("answer", answer)
-              + Loc.getLocMessage("correct-answer"));
+          journal.task(taskBuffer, 0, taskLength);
+        }
+      }
+      final int result = engine.getResult();
+      final long shownAt = shell.getClock().millis();
+      boolean isCorrect;
+      do {
+        final CharSequence answer = shell.readAnswer();
+        if (answer == null) {
+          // end of the input, the shell will report it
+          return true;
+        }
+        final long userAnswer = parseAnswer(answer);
+        if (userAnswer == NOT_A_NUMBER) {
+          // an input error, not an answer to the task
+          cohort.error(QuizShellException.Category.NUMBER);
+          shell.output(shell.getLoc().getMessage(
+              "answer-should-be-number", answer.toString()));
+          outputTask(encodedTask);
+          isCorrect = false;
+          continue;
         }
+        isCorrect = userAnswer == result;
+        recordResult(engine, (int) userAnswer, isCorrect);
+        operation.answered(isCorrect);
+        answers++;
+        if (isCorrect) {
+          cohort.offerCorrectAnswer(shell.getOpts().getLearner(),
+              shell.getClock().millis() - shownAt, engine.getText(), result);
+          correctAnswers++;
+          tasks++;
+          drill.next();
+        }
+        if (checkpoint != null) {
+          checkpoint.answered(isCorrect);
+        }
+        if (journal != null) {
+          journal.answer(answer, isCorrect);
+        }
+        outputFeedback(answer, isCorrect);
+        if (!isCorrect) {
+          outputTask(encodedTask);
+        }
+      } while (!isCorrect);
+    }
+    return false;
+  }
 
-      } while (userAnswer != result);
+  /**
+   * Render the task with its number into {@link #taskBuffer}.
+   */
+  private void renderTask(int number, CharSequence text) {
+    final int digits = (int) Math.log10(number) + 1;
+    ensureTaskBuffer(digits + 2 + text.length());
+    int position = digits;
+    for (int n = number; n > 0; n /= 10) {
+      taskBuffer[--position] = (byte) ('0' + n % 10);
+    }
+    position = digits;
+    taskBuffer[position++] = ')';
+    taskBuffer[position++] = ' ';
+    for (int i = 0; i < text.length(); i++) {
+      // rendered tasks are ASCII
+      taskBuffer[position++] = (byte) text.charAt(i);
+    }
+    taskLength = position;
+  }
+
+  private void ensureTaskBuffer(int length) {
+    if (taskBuffer.length < length) {
+      taskBuffer = new byte[Math.max(length, taskBuffer.length * 2)];
+    }
+  }
+
+  private void outputTask(byte[] encodedTask) {
+    if (encodedTask != null) {
+      shell.output(encodedTask, 0, encodedTask.length);
+    } else {
+      shell.output(taskBuffer, 0, taskLength);
+    }
+  }
+
+  /**
+   * Encode feedback messages again if the session locale is changed.
+   */
+  private void updateFeedback() {
+    final Loc loc = shell.getLoc();
+    if (loc == feedbackLoc) {
+      return;
+    }
+    final String message = loc.getMessage("answer", ANSWER_MARK);
+    final int mark = message.indexOf(ANSWER_MARK);
+    final String suffix = message.substring(mark + ANSWER_MARK.length());
+    answerPrefix =
+        message.substring(0, mark).getBytes(StandardCharsets.UTF_8);
+    correctAnswerSuffix = (suffix + loc.getMessage("correct-answer")
+        + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    wrongAnswerSuffix = (suffix + loc.getMessage("not-correct-answer")
+        + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    feedbackLoc = loc;
+  }
+
+  private void outputFeedback(CharSequence answer, boolean isCorrect) {
+    shell.output(answerPrefix, 0, answerPrefix.length);
+    if (answerBuffer.length < answer.length()) {
+      answerBuffer = new byte[Math.max(answer.length(),
+          answerBuffer.length * 2)];
+    }
+    int length = 0;
+    while (length < answer.length() && answer.charAt(length) < 0x80) {
+      answerBuffer[length] = (byte) answer.charAt(length);
+      length++;
+    }
+    if (length == answer.length()) {
+      shell.output(answerBuffer, 0, length);
+    } else {
+      shell.output(answer.toString(), false);
+    }
+    final byte[] suffix =
+        isCorrect ? correctAnswerSuffix : wrongAnswerSuffix;
+    shell.output(suffix, 0, suffix.length);
+  }
+
+  /**
+   * Parse the answer without allocations: an optional minus and digits
+   * which could be grouped with commas, whitespace around is ignored.
+   *
+   * @param answer the answer
+   * @return the number or {@link #NOT_A_NUMBER} if it is not
+   *         an int number
+   */
+  static long parseAnswer(final CharSequence answer) {
+    int start = 0;
+    int end = answer.length();
+    while (start < end && Character.isWhitespace(answer.charAt(start))) {
+      start++;
+    }
+    while (end > start && Character.isWhitespace(answer.charAt(end - 1))) {
+      end--;
+    }
+    final boolean isNegative = start < end && answer.charAt(start) == '-';
+    if (isNegative) {
+      start++;
+    }
+    if (start == end || answer.charAt(start) == ',') {
+      return NOT_A_NUMBER;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      final char c = answer.charAt(i);
+      if (c == ',') {
+        continue;
+      }
+      if (c < '0' || c > '9') {
+        return NOT_A_NUMBER;
+      }
+      value = value * 10 + (c - '0');
+      if (value > -(long) Integer.MIN_VALUE) {
+        return NOT_A_NUMBER;
+      }
+    }
+    value = isNegative ? -value : value;
+    return value > Integer.MAX_VALUE ? NOT_A_NUMBER : value;
+  }
+
+  /**
+   * @return drill in progress or null
+   */
+  SessionCheckpoint.Drill getDrill() {
+    return drill;
+  }
+
+  /**
+   * @return tasks, answers and correct answers of the session
+   */
+  long[] getSessionStats() {
+    return new long[] {tasks, answers, correctAnswers};
+  }
+
+  /**
+   * Restore statistics of the session from a checkpoint.
+   *
+   * @param stats tasks, answers and correct answers
+   */
+  void restoreSessionStats(final long[] stats) {
+    tasks = stats[0];
+    answers = stats[1];
+    correctAnswers = stats[2];
+  }
+
+  /**
+   * Add the answer to the current results batch if results are written.
+   */
+  private void recordResult(TaskEngine engine, int answer, boolean correct) {
+    final ResultsWriter writer = shell.getOpts().getResultsWriter();
+    if (writer == null) {
+      return;
+    }
+    if (resultsBatch == null) {
+      resultsBatch = new ResultsBatch(ResultsWriter.BATCH_SIZE);
+    }
+    if (resultsBatch.add(shell.getClock().millis(), engine.getShape(),
+        engine.getOperands(), answer, correct)) {
+      writer.write(resultsBatch);
+      resultsBatch = null;
     }
   }
 
+  /**
+   * Hand over the current results batch to the results writer.
+   */
+  private void flushResults() {
+    final ResultsWriter writer = shell.getOpts().getResultsWriter();
+    if (writer != null && resultsBatch != null) {
+      writer.write(resultsBatch);
+    }
+    resultsBatch = null;
+  }
+
   /**
    * Command minus to generate and check '-' tasks.
    *
    * @param line        full command line
    */
   public void minus(final String line) {
-    String[] parts = line.trim().split(COMMAND_OPTIONS_REGEX);
-    int[] args = parseIntegersOrThrow(
-        Loc.getLocMessage("number-of-tasks-should-be-number"), parts);
-    final int numOfTasks = getNumOfTasks(args);
-    final int maxNumber = getMaxNumber(args);
-    final BiFunction<Integer, Integer, Integer> result =
-        (integer, integer2) -> Math.abs(integer - integer2);
-    final BiFunction<Integer, Integer, String> output =
-        (integer, integer2) -> Math.max(integer, integer2)
-            + " - " + Math.min(integer, integer2) + " = ";
-    Supplier<Integer> numberGenerator =
-        () -> Math.abs(random.nextInt() % maxNumber);
-    doTask(numOfTasks, result, output, numberGenerator);
+    int[] args = parseIntegersOrThrow("number-of-tasks-should-be-number",
+        splitOptions(line));
+    doTask(getNumOfTasks(args), TaskShape.MINUS_SHAPE, getMaxNumber(args));
   }
 
-  private int getUserAnswer(int userAnswer, String answer) {
-    int[] intAnswer = parseIntegersOrThrow(
-        Loc.getLocMessage("answer-should-be-number", answer), answer);
-    if (intAnswer != null) {
-      userAnswer = intAnswer[0];
+  /**
+   * Command expr to generate and check tasks of the specified shape
+   * e.g. {@code expr 5 20 _ + _ * (_ - _)}.
+   *
+   * @param line        full command line
+   */
+  public void expr(final String line) {
+    String[] parts = line.trim().split(COMMAND_OPTIONS_REGEX, 3);
+    if (parts.length < 3) {
+      shell.output(shell.getLoc().getMessage("usage-expr"));
+      return;
+    }
+    int[] args = parseIntegersOrThrow("number-of-tasks-should-be-number",
+        parts[0], parts[1]);
+    if (args == null) {
+      return;
     }
-    return userAnswer;
+    doTask(args[0], TaskShape.compile(parts[2]), args[1]);
+  }
+
+  /**
+   * Create an engine for the tasks, tasks are taken from the task bank
+   * if it is set and contains tasks of the shape and maximum number.
+   */
+  private TaskEngine newEngine(TaskShape shape, int maxNumber, long seed) {
+    final TaskBank bank = shell.getOpts().getBank();
+    return new TaskEngine(shape, new Random(seed), maxNumber,
+        bank == null ? null : bank.find(shape, maxNumber));
   }
 
   /**
@@ -138,13 +546,13 @@ public void set(final String line) {
       return;
     }
 
-    final String[] parts = shell.split(line);
-    if (parts.length > 3) {
+    final String[] parts = shell.split(line.trim());
+    if (parts.length > 2) {
       shell.output("Usage: set [all | <property name> [<value>]]");
       return;
     }
 
-    String propertyName = parts[1].toLowerCase(Locale.ROOT);
+    String propertyName = parts[0].toLowerCase(Locale.ROOT);
 
     if ("all".equals(propertyName)) {
       config(null);
@@ -152,11 +560,12 @@ public void set(final String line) {
     }
 
     if (!shell.getOpts().hasProperty(propertyName)) {
-      shell.output(Loc.getLocMessage("no-specified-prop", propertyName));
+      shell.output(
+          shell.getLoc().getMessage("no-specified-prop", propertyName));
       return;
     }
 
-    if (parts.length == 2) {
+    if (parts.length == 1) {
       try {
         shell.outputProperty(propertyName,
             shell.getOpts().get(propertyName));
@@ -164,7 +573,7 @@ public void set(final String line) {
         shell.handleException(e);
       }
     } else {
-      setProperty(propertyName, parts[2], null);
+      setProperty(propertyName, parts[1], null);
     }
   }
 
@@ -172,7 +581,7 @@ private void setProperty(String key, String value, String res) {
     boolean success = shell.getOpts().set(key, value, false);
     if (success) {
       if (res != null) {
-        shell.output(Loc.getLocMessage(res, key, value));
+        shell.output(shell.getLoc().getMessage(res, key, value));
       }
     } else {
       shell.output("fail to set property");
@@ -194,6 +603,15 @@ public void config(String line) {
     }
   }
 
+  /**
+   * Split options of the command line, no options if it is blank.
+   */
+  private static String[] splitOptions(String line) {
+    final String trimmed = line.trim();
+    return trimmed.isEmpty()
+        ? new String[0] : trimmed.split(COMMAND_OPTIONS_REGEX);
+  }
+
   private int getNumOfTasks(int[] args) {
     return args == null || args.length < 1
         ? shell.getOpts().getNumberOfTasks()
@@ -206,13 +624,63 @@ private int getMaxNumber(int[] args) {
         : args[1];
   }
 
+  /**
+   * Command stats to print statistics of the cohort of the session.
+   *
+   * @param line full command line.
+   */
+  public void stats(final String line) {
+    final Loc loc = shell.getLoc();
+    final CohortStats.Snapshot snapshot = shell.getCohort().snapshot();
+    shell.output(loc.getMessage("stats-session", tasks, answers,
+        correctAnswers));
+    for (String operation : snapshot.getOperations()) {
+      final long answers = snapshot.getAnswers(operation);
+      final long correct = snapshot.getCorrect(operation);
+      shell.output(loc.getMessage("stats-operation",
+          operation.equals(CohortStats.OTHER_OPERATIONS)
+              ? loc.getMessage("stats-other-operations") : operation,
+          snapshot.getServed(operation), answers, correct,
+          answers == 0 ? 0d : (double) correct / answers));
+    }
+    if (snapshot.getFastest().isEmpty()) {
+      shell.output(loc.getMessage("stats-no-correct-answers"));
+    }
+    int place = 0;
+    for (CohortStats.Answer answer : snapshot.getFastest()) {
+      shell.output(loc.getMessage("stats-fastest", ++place,
+          answer.getLearner(), answer.getMillis(), answer.getTask()));
+    }
+    final QuizShellException.Category[] categories =
+        QuizShellException.Category.values();
+    final Object[] errors = new Object[categories.length];
+    for (int i = 0; i < categories.length; i++) {
+      errors[i] = snapshot.getErrors(categories[i]);
+    }
+    shell.output(loc.getMessage("stats-errors", errors));
+  }
+
+  /**
+   * Command run to execute commands of the script file.
+   *
+   * @param line full command line.
+   */
+  public void run(final String line) {
+    final String[] parts = shell.split(line.trim());
+    if (parts.length != 1 || parts[0].isEmpty()) {
+      shell.output(shell.getLoc().getMessage("usage-run"));
+      return;
+    }
+    shell.runScript(parts[0]);
+  }
+
   /**
    * Command H.
    *
    * @param line full command line.
    */
   public void h(final String line) {
-    shell.output(Loc.getLocMessage("help"));
+    shell.output(shell.getLoc().getMessage("help"));
   }
 
   /**
@@ -223,7 +691,7 @@ public void h(final String line) {
   public void q(final String line) {
     String[] parts = line.trim().split(COMMAND_OPTIONS_REGEX);
     if (parts.length > 0 && !parts[0].isEmpty()) {
-      shell.output(Loc.getLocMessage("usage-q"));
+      shell.output(shell.getLoc().getMessage("usage-q"));
       return;
     }
     shell.exit();
@@ -232,29 +700,29 @@ public void q(final String line) {
   /**
    * Validate if args are numbers otherwise throw NumberFormatException.
    *
+   * @param failMessageKey key of the message on the first invalid arg
    * @param args args to validate
    * @return array of parsed numbers if valid
    */
-  private int[] parseIntegersOrThrow(final String failMessage,
+  private int[] parseIntegersOrThrow(final String failMessageKey,
                                      final String... args) {
-    INTEGER_INSTANCE.setParseIntegerOnly(false);
     if (args == null || args.length == 0) {
       return null;
     }
     int[] result = new int[args.length];
-    try {
-      for (int i = 0; i < args.length; i++) {
-        Number parsedNumber = INTEGER_INSTANCE.parse(args[i]);
-        // {@line DecimalFormat} parses into Long or Double
-        if (!(parsedNumber instanceof Long)) {
-          shell.output(failMessage);
-          return null;
-        }
-        result[i] = parsedNumber.intValue();
+    // parse with a position to not throw exceptions for typos
+    final ParsePosition position = new ParsePosition(0);
+    for (int i = 0; i < args.length; i++) {
+      position.setIndex(0);
+      Number parsedNumber = integerFormat.parse(args[i], position);
+      // {@line DecimalFormat} parses into Long or Double,
+      // null means it is not a number
+      if (!(parsedNumber instanceof Long)) {
+        shell.getCohort().error(QuizShellException.Category.NUMBER);
+        shell.output(shell.getLoc().getMessage(failMessageKey, args[i]));
+        return null;
       }
-    } catch (ParseException e) {
-      shell.output(failMessage);
-      return null;
+      result[i] = parsedNumber.intValue();
     }
     return result;
   }
@@ -1,25 +1,104 @@
 package ru.nuyanzin.quizshell;
 
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Properties text retriever from resource.
  *
+ * <p>There is an instance per bundle, it is created on the first use
+ * and then shared by all sessions with a locale resolved to the bundle,
+ * so any number of distinct locale tags gives at most as many instances
+ * as there are bundles. Messages without
+ * params are resolved once, formatters for others are compiled once.
  */
 public final class Loc {
+  /**
+   * Name of the resource bundle.
+   */
+  private static final String BUNDLE_NAME = "QuizShell";
+
+  /**
+   * Do not fall back to the default locale of the JVM,
+   * so messages do not depend on where the shell is started.
+   */
+  private static final ResourceBundle.Control CONTROL =
+      ResourceBundle.Control.getNoFallbackControl(
+          ResourceBundle.Control.FORMAT_PROPERTIES);
+
+  /**
+   * Already loaded bundles by their locales.
+   */
+  private static final ConcurrentMap<Locale, Loc> LOCS =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Resource to use for messages outside of a session.
+   */
+  private static final Loc ROOT = forLocale(Locale.ROOT);
+
+  private final Locale locale;
+  /**
+   * Resolved messages without params.
+   */
+  private final Map<String, String> messages;
+  /**
+   * Compiled formats of messages with params, should be cloned before use
+   * since {@link MessageFormat} is not threadsafe.
+   */
+  private final Map<String, MessageFormat> formats;
+
+  private Loc(ResourceBundle bundle) {
+    this.locale = bundle.getLocale();
+    final Map<String, String> messages = new HashMap<>();
+    final Map<String, MessageFormat> formats = new HashMap<>();
+    for (Enumeration<String> keys = bundle.getKeys();
+         keys.hasMoreElements();) {
+      final String key = keys.nextElement();
+      final MessageFormat format =
+          new MessageFormat(bundle.getString(key), locale);
+      if (format.getFormats().length == 0) {
+        messages.put(key, format.format(new Object[0]));
+      } else {
+        formats.put(key, format);
+      }
+    }
+    this.messages = Collections.unmodifiableMap(messages);
+    this.formats = Collections.unmodifiableMap(formats);
+  }
+
+  /**
+   * Get messages for the locale, the resource is loaded only once.
+   *
+   * @param locale locale
+   * @return messages of the bundle the locale is resolved to
+   */
+  public static Loc forLocale(final Locale locale) {
+    // bundles are cached by ResourceBundle
+    final ResourceBundle bundle =
+        ResourceBundle.getBundle(BUNDLE_NAME, locale, CONTROL);
+    return LOCS.computeIfAbsent(bundle.getLocale(), l -> new Loc(bundle));
+  }
 
   /**
-   * Resource to use.
+   * @return messages for the root locale
    */
-  private static final ResourceBundle RESOURCE_BUNDLE =
-      ResourceBundle.getBundle("QuizShell", Locale.ROOT);
+  public static Loc root() {
+    return ROOT;
+  }
 
   /**
-   * No need to have constructor public.
+   * @return locale of the bundle of the messages
    */
-  private Loc() {
+  public Locale getLocale() {
+    return locale;
   }
 
   /**
@@ -29,8 +108,29 @@ private Loc() {
    * @param params params to substitute
    * @return the message with substituted params
    */
+  public String getMessage(final String key, final Object... params) {
+    final String message = messages.get(key);
+    if (message != null) {
+      return message;
+    }
+    final MessageFormat format = formats.get(key);
+    if (format == null) {
+      // let the bundle report the missing key
+      return ResourceBundle.getBundle(BUNDLE_NAME, locale, CONTROL)
+          .getString(key);
+    }
+    return ((MessageFormat) format.clone()).format(params);
+  }
+
+  /**
+   * Retrieve the message for the root locale
+   * and substitute params if specified.
+   *
+   * @param key    key in resource file
+   * @param params params to substitute
+   * @return the message with substituted params
+   */
   public static String getLocMessage(final String key, final Object... params) {
-    return new MessageFormat(RESOURCE_BUNDLE.getString(key), Locale.ROOT)
-        .format(params);
+    return ROOT.getMessage(key, params);
   }
 }
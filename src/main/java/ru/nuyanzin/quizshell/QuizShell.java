@@ -1,10 +1,9 @@
 package ru.nuyanzin.quizshell;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.InvocationTargetException;
@@ -12,13 +11,13 @@
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Clock;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 
 /**
  * Main class for quiz shell.
@@ -31,103 +30,309 @@ public class QuizShell {
    */
   private static final int MAX_NUMBER_SYMBOLS_FOR_UNKNOWN_COMMAND = 100;
 
+  /**
+   * Separator of commands on one line.
+   */
+  private static final char COMMAND_SEPARATOR = ';';
+
+  /**
+   * Maximum depth of scripts run from scripts.
+   */
+  private static final int MAX_SCRIPT_DEPTH = 16;
+
   /**
    * Flag to show should leave while cycle.
    */
   private boolean isExitRequired = false;
 
   /**
-   * Output stream.
+   * Input of the session.
+   */
+  private final InputStream inputStream;
+
+  /**
+   * Whether to repeat commands in the output.
+   */
+  private final boolean echo;
+
+  /**
+   * Output stream, it is flushed after every line of commands
+   * and before waiting for the user input.
    */
   private final PrintStream outputStream;
 
+  /**
+   * Stream for errors not related to commands output.
+   */
+  private final OutputStream errorOutput;
+
+  /**
+   * Print stream over {@link #errorOutput}, it is created on the first
+   * error since the most of sessions do not have any.
+   */
+  private PrintStream errorStream;
+
+  private final Clock clock;
+  private final Random random;
+
+  /**
+   * Statistics of the cohort the session belongs to.
+   */
+  private final CohortStats cohort;
+
+  /**
+   * Classes the session could broadcast to and join.
+   */
+  private final Classrooms classrooms;
+
+  /**
+   * Checkpoint of the session or null if it is not checkpointed.
+   */
+  private final SessionCheckpoint checkpoint;
+
+  /**
+   * Journal of the session or null if it is not journaled.
+   */
+  private final SessionJournal.Recorder journal;
+
+  /**
+   * Drill of the checkpoint to resume when the session starts.
+   */
+  private SessionCheckpoint.Drill resumedDrill;
+
+  /**
+   * Current input, commands and answers are read from it.
+   */
+  private BoundedLineReader reader;
+
+  /**
+   * Maximum length of input lines, the rest of longer lines is skipped.
+   */
+  private final int maxLineLength;
+
+  /**
+   * Number of scripts being run by the {@code run} command.
+   */
+  private int scriptDepth;
+
+  /**
+   * Directory of the script being run, relative paths of scripts
+   * run from it are resolved against it; null outside of scripts.
+   */
+  private Path scriptDir;
+
+  /**
+   * Messages of the session locale.
+   */
+  private volatile Loc loc = Loc.root();
+
   private final Reflector reflector;
   private final QuizShellOpts quizShellOpts;
+  private final GeneralCommands commands;
+
+  /**
+   * Names and aliases of existing commands.
+   */
+  private static final CommandResolver COMMANDS = new CommandResolver(
+      new String[] {"PLUS", "+"},
+      new String[] {"MINUS", "-"},
+      new String[] {"EXPR"},
+      new String[] {"BROADCAST"},
+      new String[] {"JOIN"},
+      new String[] {"H"},
+      new String[] {"RUN"},
+      new String[] {"SET"},
+      new String[] {"STATS"},
+      new String[] {"Q"});
 
   /**
-   * Defined map of existing commands.
+   * Handlers of existing commands in the order of {@link #COMMANDS}.
    */
-  private final Map<String, CommandHandler> commandHandlerMap;
+  private final CommandHandler[] commandHandlers;
 
   /**
-   * DrawingShell constructor could be called only from this class.
+   * QuizShell constructor could be called only from {@link Builder}.
    *
+   * @param builder builder with the components of the shell
+   * @param random  random to generate tasks
    * @throws UnsupportedEncodingException if any of the specified charsets
    *                                      for print stream does not exist
    */
-  private QuizShell() throws UnsupportedEncodingException {
+  private QuizShell(final Builder builder, final Random random)
+      throws UnsupportedEncodingException {
+    inputStream = builder.input;
+    echo = builder.echo == null ? !System.in.equals(inputStream) : builder.echo;
+    clock = builder.clock;
+    this.random = random;
+    cohort = builder.cohort;
+    classrooms = builder.classrooms;
+    maxLineLength = builder.maxLineLength;
+
     reflector = new Reflector(this);
     quizShellOpts = new QuizShellOpts(this);
 
-    outputStream = new PrintStream(
-        System.out, true, StandardCharsets.UTF_8.name());
-
-    final GeneralCommands commands = new GeneralCommands(this);
-
-    commandHandlerMap =
-        Collections.unmodifiableMap(
-            new HashMap<String, CommandHandler>() {{
-                put("PLUS", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "PLUS"));
-                put("+", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "PLUS"));
-                put("MINUS", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "MINUS"));
-                put("-", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "MINUS"));
-                put("H", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "H"));
-                put("SET", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "SET"));
-                put("Q", new ReflectiveCommandHandler<>(
-                    QuizShell.this, commands, "Q"));
-            }}
-        );
+    outputStream = new PrintStream(new BufferedOutputStream(builder.output),
+        false, StandardCharsets.UTF_8.name());
+    errorOutput = builder.error;
+
+    commands = new GeneralCommands(this);
+
+    commandHandlers = new CommandHandler[COMMANDS.size()];
+    for (int i = 0; i < commandHandlers.length; i++) {
+      commandHandlers[i] = new ReflectiveCommandHandler<>(
+          this, commands, COMMANDS.getName(i));
+    }
+    if (builder.useSystemProperties) {
+      quizShellOpts.setFromSystemProperties();
+    }
+    journal = builder.journal == null
+        ? null : SessionJournal.open(builder.journal).recorder(clock);
+    checkpoint = builder.checkpoint == null
+        ? null : new SessionCheckpoint(builder.checkpoint);
+    if (checkpoint != null) {
+      restore();
+    }
   }
 
   /**
-   * @param args startup args
+   * Restore options, statistics and the drill of the session
+   * from the checkpoint.
    */
-  public static void main(final String[] args)
-      throws UnsupportedEncodingException {
-    QuizShell shell = new QuizShell();
+  private void restore() {
+    final SessionCheckpoint.State state;
+    try {
+      state = checkpoint.read();
+    } catch (IOException e) {
+      error(loc.getMessage("checkpoint-not-read", checkpoint, e));
+      return;
+    }
+    if (state == null) {
+      return;
+    }
+    for (Map.Entry<String, String> option : state.getOptions().entrySet()) {
+      quizShellOpts.set(
+          option.getKey().substring(QuizShellOpts.PROPERTY_PREFIX.length()),
+          option.getValue(), true);
+    }
+    commands.restoreSessionStats(state.getStats());
+    resumedDrill = state.getDrill();
+  }
+
+  /**
+   * Replace the checkpoint with the snapshot of the session,
+   * it is done at command boundaries.
+   */
+  private void checkpoint() {
+    if (checkpoint == null) {
+      return;
+    }
+    try {
+      checkpoint.snapshot(quizShellOpts.toProperties(),
+          commands.getSessionStats(), commands.getDrill());
+    } catch (ReflectiveOperationException e) {
+      handleException(e);
+    }
+  }
+
+  /**
+   * Create a builder of a shell, by default the shell works
+   * with {@link System#in}, {@link System#out} and {@link System#err}.
+   *
+   * @return the builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
 
+  /**
+   * @param args startup args
+   */
+  public static void main(final String[] args) {
+    if (args != null && args.length > 0 && args[0].startsWith("--")) {
+      ScriptReplay.main(args);
+      return;
+    }
+    final Builder builder = builder().useSystemProperties(true);
+    final String checkpoint =
+        System.getProperty(QuizShellOpts.PROPERTY_PREFIX + "checkpoint");
+    if (checkpoint != null) {
+      builder.checkpoint(checkpoint);
+    }
+    final String journal =
+        System.getProperty(QuizShellOpts.PROPERTY_PREFIX + "journal");
+    if (journal != null) {
+      builder.journal(journal);
+    }
+    final Integer maxLineLength = Integer.getInteger(
+        QuizShellOpts.PROPERTY_PREFIX + "maxLineLength");
+    if (maxLineLength != null) {
+      builder.maxLineLength(maxLineLength);
+    }
     if (args == null || args.length == 0) {
-      shell.start(System.in);
-    } else if (args.length == 1) {
-      Path absolutePathToFile = Paths.get(args[0]).toAbsolutePath();
-      if (Files.exists(absolutePathToFile)) {
-        try (FileInputStream fis =
-                 new FileInputStream(absolutePathToFile.toFile())) {
-          shell.start(fis);
-        } catch (IOException e) {
-          shell.handleException(e);
-        }
-      } else {
-        shell.output(Loc.getLocMessage("file-not-exist",
-            absolutePathToFile.toString()));
-      }
-    } else {
-      shell.output(Loc.getLocMessage("usage-start"));
+      builder.build().run();
+      return;
+    }
+    // the input is chosen before the shell is built, so only one shell
+    // restores the checkpoint and opens the journal
+    final Loc loc = Loc.forLocale(Locale.forLanguageTag(System.getProperty(
+        QuizShellOpts.PROPERTY_PREFIX + "locale", "")));
+    if (args.length > 1) {
+      System.out.println(loc.getMessage("usage-start"));
+      return;
+    }
+    final Path absolutePathToFile = Paths.get(args[0]).toAbsolutePath();
+    if (!Files.exists(absolutePathToFile)) {
+      System.out.println(loc.getMessage("file-not-exist",
+          absolutePathToFile.toString()));
+      return;
+    }
+    try (InputStream fis = Files.newInputStream(absolutePathToFile)) {
+      builder.input(fis).build().run();
+    } catch (IOException e) {
+      e.printStackTrace(System.out);
     }
   }
 
+  /**
+   * Run the session on the input of the shell until the command
+   * {@code q} or the end of the input.
+   */
+  public void run() {
+    start(inputStream);
+  }
+
   /**
    * Shell start.
    *
    * @param inputStream input stream to work with
    */
   private void start(final InputStream inputStream) {
-    try (BufferedReader scanner = new BufferedReader(
-        new InputStreamReader(inputStream, StandardCharsets.UTF_8.name()))) {
+    try (BoundedLineReader scanner =
+             new BoundedLineReader(inputStream, maxLineLength)) {
+      reader = scanner;
+      if (journal != null) {
+        journal.started(quizShellOpts.getLearner());
+      }
+      checkpoint();
+      if (resumedDrill != null) {
+        final SessionCheckpoint.Drill drill = resumedDrill;
+        resumedDrill = null;
+        try {
+          commands.resume(drill);
+        } catch (Throwable t) {
+          handleException(t);
+        }
+        checkpoint();
+      }
       String fullCommandLine = "";
       while (!isExitRequired && fullCommandLine != null) {
         try {
+          commands.checkClassroom();
           output(getPrompt(), false);
-          fullCommandLine = scanner.readLine();
+          fullCommandLine = readLine();
 
           if (fullCommandLine == null) {
-            output("\n" + Loc.getLocMessage("eof-detected"));
+            output("\n" + loc.getMessage("eof-detected"));
             isExitRequired = true;
             continue;
           }
@@ -135,21 +340,10 @@ private void start(final InputStream inputStream) {
           // command (or cut version in case of very long line) in output.
           // Could be helpful while analysis
           // of output after working with file commands.
-          if (!System.in.equals(inputStream)) {
-            output(getCutString(fullCommandLine));
+          if (echo) {
+            output(getCutString(fullCommandLine, loc));
           }
-          String trimmedLine = fullCommandLine.trim();
-          if (trimmedLine.isEmpty()) {
-            continue;
-          }
-          // currently commands are simple and do not contain spaces
-          // in case the requirement change the logic should be adapted
-          int firstSpaceIndex = trimmedLine.indexOf(" ");
-          String commandName = trimmedLine;
-          if (firstSpaceIndex != -1) {
-            commandName = trimmedLine.substring(0, firstSpaceIndex);
-          }
-          executeCommand(fullCommandLine, trimmedLine, commandName);
+          executeLine(fullCommandLine);
         } catch (Throwable t) {
           handleException(t);
           output(getPrompt(), false);
@@ -157,33 +351,169 @@ private void start(final InputStream inputStream) {
       }
     } catch (IOException e) {
       handleException(e);
+    } finally {
+      flush();
     }
   }
 
   /**
-   * Determine the right command handler and execute the command.
+   * Execute all the commands of the line, commands are separated
+   * with {@link #COMMAND_SEPARATOR} outside of quotes.
+   * Commands of one line are executed as a batch: without prompts
+   * between them and the output is flushed once after the last one.
    *
-   * @param fullCommandLine full command line
-   * @param trimmedLine     trimmed command line
-   * @param commandName     parsed command name
-   */
-  private void executeCommand(final String fullCommandLine,
-                              final String trimmedLine,
-                              final String commandName) {
-    CommandHandler commandHandler =
-        commandHandlerMap.get(commandName.toUpperCase(Locale.ROOT));
-    if (commandHandler != null) {
-      if (Objects.equals(commandName, trimmedLine)) {
-        commandHandler.execute("");
-      } else {
-        commandHandler.execute(
-            fullCommandLine.substring(
-                fullCommandLine.indexOf(commandName)
-                    + commandName.length() + 1));
+   * @param line line to execute
+   */
+  private void executeLine(final String line) {
+    char quote = 0;
+    int start = 0;
+    for (int i = 0; i <= line.length() && !isExitRequired; i++) {
+      final char c = i == line.length() ? COMMAND_SEPARATOR : line.charAt(i);
+      if (i == line.length()) {
+        // the last command, even with a not closed quote
+        // which is reported by the command
+        executeCommand(line, start, i);
+      } else if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == COMMAND_SEPARATOR) {
+        executeCommand(line, start, i);
+        start = i + 1;
       }
-    } else {
-      output(Loc.getLocMessage("unknown-command", getCutString(commandName)));
     }
+    flush();
+    checkpoint();
+  }
+
+  /**
+   * Execute the commands of the script file as one batch
+   * in the current session. The answers to the tasks are read
+   * from the script too. A relative path is resolved against
+   * the directory of the script running the command
+   * or the working directory outside of scripts.
+   *
+   * @param file script file
+   */
+  void runScript(final String file) {
+    final Path path = (scriptDir == null
+        ? Paths.get(file) : scriptDir.resolve(file)).toAbsolutePath();
+    if (!Files.exists(path)) {
+      output(loc.getMessage("file-not-exist", path.toString()));
+      return;
+    }
+    if (scriptDepth >= MAX_SCRIPT_DEPTH) {
+      output(loc.getMessage("script-too-deep", MAX_SCRIPT_DEPTH));
+      return;
+    }
+    final BoundedLineReader previousReader = reader;
+    final Path previousScriptDir = scriptDir;
+    scriptDepth++;
+    try (BoundedLineReader script = new BoundedLineReader(
+        Files.newInputStream(path), maxLineLength)) {
+      reader = script;
+      scriptDir = path.getParent();
+      String line;
+      while (!isExitRequired && (line = readLine()) != null) {
+        executeLine(line);
+      }
+    } catch (IOException e) {
+      handleException(e);
+    } finally {
+      reader = previousReader;
+      scriptDir = previousScriptDir;
+      scriptDepth--;
+    }
+  }
+
+  /**
+   * @return true if the current input is a script run by
+   *         the {@code run} command, its end does not end the session
+   */
+  boolean isScriptRunning() {
+    return scriptDepth > 0;
+  }
+
+  /**
+   * Read the next line of the current input, e.g. an answer to a task.
+   * The pending output is flushed before waiting for the user.
+   *
+   * @return the line or null in case of the end of the input
+   * @throws IOException in case of I/O errors
+   */
+  String readLine() throws IOException {
+    if (scriptDepth == 0) {
+      flush();
+    }
+    final String line = reader.readLine();
+    if (reader.isTruncated()) {
+      output(loc.getMessage("line-truncated", maxLineLength));
+    }
+    if (journal != null && line != null) {
+      journal.line(line);
+    }
+    return line;
+  }
+
+  /**
+   * Read the next line of the current input as an answer to a task
+   * without creating a string.
+   * The pending output is flushed before waiting for the user.
+   *
+   * @return the line or null in case of the end of the input,
+   *         the buffer is reused by the next read
+   * @throws IOException in case of I/O errors
+   */
+  CharSequence readAnswer() throws IOException {
+    if (scriptDepth == 0) {
+      flush();
+    }
+    final CharSequence line = reader.readLineChars();
+    if (reader.isTruncated()) {
+      output(loc.getMessage("line-truncated", maxLineLength));
+    }
+    return line;
+  }
+
+  /**
+   * Determine the right command handler and execute the command.
+   * The command name is resolved directly in the line, only arguments
+   * of the command, if any, are copied.
+   *
+   * @param line command line
+   * @param from start of the command in the line
+   * @param to   end (exclusive) of the command in the line
+   */
+  private void executeCommand(final String line,
+                              final int from,
+                              final int to) {
+    int nameStart = from;
+    while (nameStart < to && Character.isWhitespace(line.charAt(nameStart))) {
+      nameStart++;
+    }
+    if (nameStart == to) {
+      return;
+    }
+    int nameEnd = nameStart;
+    while (nameEnd < to && !Character.isWhitespace(line.charAt(nameEnd))) {
+      nameEnd++;
+    }
+    final int command = COMMANDS.resolve(line, nameStart, nameEnd);
+    if (command < 0) {
+      cohort.error(QuizShellException.Category.COMMAND);
+      output(loc.getMessage(
+          command == CommandResolver.AMBIGUOUS
+              ? "ambiguous-command" : "unknown-command",
+          getCutString(line.substring(nameStart, nameEnd), loc)));
+      return;
+    }
+    if (journal != null) {
+      journal.command(COMMANDS.getName(command));
+    }
+    commandHandlers[command].execute(
+        nameEnd >= to - 1 ? "" : line.substring(nameEnd + 1, to));
   }
 
   /**
@@ -194,9 +524,21 @@ private void executeCommand(final String fullCommandLine,
    * @return the cut or original line depending on its length
    */
   public static String getCutString(String line) {
+    return getCutString(line, Loc.root());
+  }
+
+  /**
+   * Cut the line if its length
+   * is longer then {@link #MAX_NUMBER_SYMBOLS_FOR_UNKNOWN_COMMAND}.
+   *
+   * @param line line to cut
+   * @param loc  messages to use
+   * @return the cut or original line depending on its length
+   */
+  public static String getCutString(String line, Loc loc) {
     return line.length() > MAX_NUMBER_SYMBOLS_FOR_UNKNOWN_COMMAND
         ? line.substring(0, MAX_NUMBER_SYMBOLS_FOR_UNKNOWN_COMMAND)
-        + Loc.getLocMessage("rest-is-cut")
+        + loc.getMessage("rest-is-cut")
         : line;
   }
 
@@ -206,7 +548,7 @@ public static String getCutString(String line) {
    * @return prompt string.
    */
   private String getPrompt() {
-    return Loc.getLocMessage("prompt");
+    return loc.getMessage("prompt");
   }
 
   /**
@@ -248,6 +590,90 @@ public void output(final String msg, final boolean newline) {
     }
   }
 
+  /**
+   * Print the bytes already encoded to UTF-8 as is.
+   *
+   * @param bytes  the bytes to print
+   * @param offset offset of the bytes to print
+   * @param length number of the bytes to print
+   */
+  void output(final byte[] bytes, final int offset, final int length) {
+    outputStream.write(bytes, offset, length);
+  }
+
+  /**
+   * Flush the pending output.
+   */
+  public void flush() {
+    outputStream.flush();
+    if (journal != null) {
+      journal.commit();
+    }
+  }
+
+  /**
+   * Print the specified message to the error stream.
+   * The pending output is flushed first, so the message follows
+   * the output printed before it if both streams go to one place.
+   *
+   * @param msg the message to print
+   */
+  public void error(final String msg) {
+    outputStream.flush();
+    if (errorStream == null) {
+      try {
+        errorStream = new PrintStream(
+            errorOutput, true, StandardCharsets.UTF_8.name());
+      } catch (UnsupportedEncodingException e) {
+        // UTF-8 is always supported
+        throw new IllegalStateException(e);
+      }
+    }
+    errorStream.println(msg);
+  }
+
+  /**
+   * @return clock for timestamps of results and answer times
+   */
+  Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * @return random of the session to seed its drills
+   */
+  Random getRandom() {
+    return random;
+  }
+
+  /**
+   * @return statistics of the cohort the session belongs to
+   */
+  CohortStats getCohort() {
+    return cohort;
+  }
+
+  /**
+   * @return classes the session could broadcast to and join
+   */
+  Classrooms getClassrooms() {
+    return classrooms;
+  }
+
+  /**
+   * @return checkpoint of the session or null if it is not checkpointed
+   */
+  SessionCheckpoint getCheckpoint() {
+    return checkpoint;
+  }
+
+  /**
+   * @return journal of the session or null if it is not journaled
+   */
+  SessionJournal.Recorder getJournal() {
+    return journal;
+  }
+
   public Reflector getReflector() {
     return reflector;
   }
@@ -256,6 +682,17 @@ public QuizShellOpts getOpts() {
     return quizShellOpts;
   }
 
+  /**
+   * @return messages of the session locale
+   */
+  public Loc getLoc() {
+    return loc;
+  }
+
+  void setLoc(Loc loc) {
+    this.loc = loc;
+  }
+
   /**
    * Get print stream output.
    *
@@ -266,14 +703,21 @@ public PrintStream getOutput() {
   }
 
   /**
-   * Exception handling.
+   * Report the exception: errors of the user input are counted and
+   * reported as a one-line message, others with the stack trace.
    *
-   * @param e exception/error/throwable to handle
+   * @param e the exception
    */
   public void handleException(Throwable e) {
     while (e instanceof InvocationTargetException) {
       e = ((InvocationTargetException) e).getTargetException();
     }
+    if (e instanceof QuizShellException) {
+      final QuizShellException error = (QuizShellException) e;
+      cohort.error(error.getCategory());
+      output(error.getMessage(loc));
+      return;
+    }
     e.printStackTrace(outputStream);
   }
 
@@ -350,8 +794,8 @@ String dequote(String str) {
         || str.charAt(str.length() - 1) == '"'
         || str.charAt(str.length() - 1) == '\'')
         && str.charAt(0) != str.charAt(str.length() - 1))) {
-      throw new IllegalArgumentException(
-          "A quote should be closed for <" + str + ">");
+      throw new QuizShellException(QuizShellException.Category.SYNTAX,
+          "quote-not-closed", str);
     }
     char prevQuote = 0;
     int index = 0;
@@ -360,8 +804,8 @@ String dequote(String str) {
       // if start and end point to the same element
       if (index == str.length() - index - 1) {
         if (prevQuote == str.charAt(index)) {
-          throw new IllegalArgumentException(
-              "A non-paired quote may not occur between the same quotes");
+          throw new QuizShellException(QuizShellException.Category.SYNTAX,
+              "quote-not-paired", str);
         } else {
           break;
         }
@@ -403,4 +847,164 @@ String[] split(String line, int limit) {
   void outputProperty(String key, String value) {
     output(key + " " + value);
   }
+
+  /**
+   * Builder of {@link QuizShell}, it allows to embed shells into
+   * a host application, e.g. to run many sessions in one JVM.
+   * Immutable parts (commands, messages, task shapes and banks)
+   * are shared by all the shells of the JVM.
+   */
+  public static final class Builder {
+    private InputStream input = System.in;
+    private OutputStream output = System.out;
+    private OutputStream error = System.err;
+    private Clock clock = Clock.systemUTC();
+    private Random random;
+    private CohortStats cohort = CohortStats.global();
+    private Classrooms classrooms = Classrooms.global();
+    private String checkpoint;
+    private String journal;
+    private int maxLineLength = BoundedLineReader.DEFAULT_MAX_LINE_LENGTH;
+    private Boolean echo;
+    private boolean useSystemProperties;
+
+    private Builder() {
+    }
+
+    /**
+     * @param input input of commands and answers
+     * @return this builder
+     */
+    public Builder input(final InputStream input) {
+      this.input = Objects.requireNonNull(input);
+      return this;
+    }
+
+    /**
+     * @param output output of the session
+     * @return this builder
+     */
+    public Builder output(final OutputStream output) {
+      this.output = Objects.requireNonNull(output);
+      return this;
+    }
+
+    /**
+     * @param error output of errors not related to commands output
+     * @return this builder
+     */
+    public Builder error(final OutputStream error) {
+      this.error = Objects.requireNonNull(error);
+      return this;
+    }
+
+    /**
+     * @param clock clock for timestamps of results
+     * @return this builder
+     */
+    public Builder clock(final Clock clock) {
+      this.clock = Objects.requireNonNull(clock);
+      return this;
+    }
+
+    /**
+     * @param random random to generate tasks, by default every shell
+     *               has its own
+     * @return this builder
+     */
+    public Builder random(final Random random) {
+      this.random = Objects.requireNonNull(random);
+      return this;
+    }
+
+    /**
+     * @param cohort statistics of the cohort of the session, by default
+     *               all the shells of the JVM share
+     *               {@link CohortStats#global()}
+     * @return this builder
+     */
+    public Builder cohort(final CohortStats cohort) {
+      this.cohort = Objects.requireNonNull(cohort);
+      return this;
+    }
+
+    /**
+     * @param classrooms classes the session could broadcast to and join,
+     *                   by default all the shells of the JVM share
+     *                   {@link Classrooms#global()}
+     * @return this builder
+     */
+    public Builder classrooms(final Classrooms classrooms) {
+      this.classrooms = Objects.requireNonNull(classrooms);
+      return this;
+    }
+
+    /**
+     * @param checkpoint file to checkpoint the session to, if it exists
+     *                   the session is resumed from it: options,
+     *                   statistics and the drill in progress
+     * @return this builder
+     */
+    public Builder checkpoint(final String checkpoint) {
+      this.checkpoint = Objects.requireNonNull(checkpoint);
+      return this;
+    }
+
+    /**
+     * @param journal file to append input lines, commands, tasks
+     *                and answers of the session to, see
+     *                {@link SessionJournal}
+     * @return this builder
+     */
+    public Builder journal(final String journal) {
+      this.journal = Objects.requireNonNull(journal);
+      return this;
+    }
+
+    /**
+     * @param maxLineLength maximum length of input lines, the rest
+     *                      of longer lines is skipped, so the memory
+     *                      of the session does not depend on the input
+     * @return this builder
+     */
+    public Builder maxLineLength(final int maxLineLength) {
+      if (maxLineLength <= 0) {
+        throw new IllegalArgumentException(String.valueOf(maxLineLength));
+      }
+      this.maxLineLength = maxLineLength;
+      return this;
+    }
+
+    /**
+     * @param echo whether to repeat commands in the output, by default
+     *             they are repeated if the input is not {@link System#in}
+     * @return this builder
+     */
+    public Builder echo(final boolean echo) {
+      this.echo = echo;
+      return this;
+    }
+
+    /**
+     * @param useSystemProperties whether to set options from system
+     *                            properties, see {@link QuizShellOpts}
+     * @return this builder
+     */
+    public Builder useSystemProperties(final boolean useSystemProperties) {
+      this.useSystemProperties = useSystemProperties;
+      return this;
+    }
+
+    /**
+     * @return new shell
+     */
+    public QuizShell build() {
+      try {
+        return new QuizShell(this, random == null ? new Random() : random);
+      } catch (UnsupportedEncodingException e) {
+        // UTF-8 is always supported
+        throw new IllegalStateException(e);
+      }
+    }
+  }
 }
@@ -0,0 +1,95 @@
+package ru.nuyanzin.quizshell;
+
+/**
+ * Error of the user input e.g. a wrong number or a not closed quote.
+ *
+ * <p>Such errors are expected, so the exception does not fill
+ * its stack trace and the shell reports it as a one-line message
+ * in the session language. The message is resolved only when it is
+ * needed.
+ */
+public class QuizShellException extends IllegalArgumentException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Category of input errors, errors are counted per category.
+   */
+  public enum Category {
+    /** Unknown or ambiguous command. */
+    COMMAND,
+    /** Wrong quotes. */
+    SYNTAX,
+    /** A number is expected. */
+    NUMBER,
+    /** Wrong property or its value. */
+    PROPERTY,
+    /** Wrong task shape or maximum number. */
+    TASK,
+    /** File could not be read. */
+    FILE
+  }
+
+  private final Category category;
+  private final String key;
+  private final transient Object[] params;
+
+  /**
+   * Constructor.
+   *
+   * @param category category of the error
+   * @param key      key of the message in resource file
+   * @param params   params of the message
+   */
+  public QuizShellException(final Category category, final String key,
+                            final Object... params) {
+    this(category, null, key, params);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param category category of the error
+   * @param cause    cause of the error
+   * @param key      key of the message in resource file
+   * @param params   params of the message
+   */
+  public QuizShellException(final Category category, final Throwable cause,
+                            final String key, final Object... params) {
+    super(key, cause);
+    this.category = category;
+    this.key = key;
+    this.params = params;
+  }
+
+  /**
+   * The stack trace is not filled, it is not needed for input errors.
+   *
+   * @return this exception
+   */
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+
+  public Category getCategory() {
+    return category;
+  }
+
+  /**
+   * @return the message for the root locale
+   */
+  @Override
+  public String getMessage() {
+    return getMessage(Loc.root());
+  }
+
+  /**
+   * @param loc messages of a locale
+   * @return the message for the locale
+   */
+  public String getMessage(final Loc loc) {
+    return loc.getMessage(key, params);
+  }
+}
+
+// End QuizShellException.java
@@ -2,6 +2,7 @@
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.Locale;
 import java.util.Properties;
@@ -16,6 +17,12 @@ public class QuizShellOpts {
   private final QuizShell quizShell;
   private int numberOfTasks = 5;
   private int maxNumber = 10;
+  private String taskBank = "";
+  private TaskBank bank;
+  private String locale = "";
+  private String results = "";
+  private String learner = "anonymous";
+  private ResultsWriter resultsWriter;
   private Set<String> propertyNames;
 
   public QuizShellOpts(QuizShell quizShell) {
@@ -38,6 +45,77 @@ public int getNumberOfTasks() {
     return numberOfTasks;
   }
 
+  public String getTaskBank() {
+    return taskBank;
+  }
+
+  /**
+   * Set the file of a task bank to take tasks from,
+   * empty value means to generate tasks.
+   *
+   * @param taskBank file of the task bank
+   */
+  public void setTaskBank(String taskBank) {
+    this.bank = taskBank == null || taskBank.isEmpty()
+        ? null : TaskBank.load(taskBank);
+    this.taskBank = taskBank == null ? "" : taskBank;
+  }
+
+  TaskBank getBank() {
+    return bank;
+  }
+
+  public String getLocale() {
+    return locale;
+  }
+
+  /**
+   * Set the language of the session messages e.g. {@code ru},
+   * empty value means the default language.
+   *
+   * @param locale language tag
+   */
+  public void setLocale(String locale) {
+    final String tag = locale == null ? "" : locale;
+    quizShell.setLoc(Loc.forLocale(Locale.forLanguageTag(tag)));
+    this.locale = tag;
+  }
+
+  public String getResults() {
+    return results;
+  }
+
+  /**
+   * Set the file to append answered tasks to, files with {@code .csv}
+   * extension are written as CSV others in binary columnar format.
+   * Empty value means not to write results.
+   *
+   * @param results results file
+   */
+  public void setResults(String results) {
+    this.resultsWriter = results == null || results.isEmpty()
+        ? null : ResultsWriter.open(results);
+    this.results = results == null ? "" : results;
+  }
+
+  ResultsWriter getResultsWriter() {
+    return resultsWriter;
+  }
+
+  public String getLearner() {
+    return learner;
+  }
+
+  /**
+   * Set the name of the learner shown in the cohort statistics.
+   *
+   * @param learner name of the learner
+   */
+  public void setLearner(String learner) {
+    this.learner = learner == null || learner.isEmpty()
+        ? "anonymous" : learner;
+  }
+
 
   public void set(String key, String value) {
     set(key, value, false);
@@ -48,8 +126,17 @@ public boolean set(String key, String value, boolean quiet) {
       quizShell.getReflector().invoke(this, "set" + key, value);
       return true;
     } catch (Exception e) {
-      System.err.println(
-          Loc.getLocMessage(
+      final Throwable cause = e instanceof InvocationTargetException
+          ? e.getCause() : e;
+      if (cause instanceof QuizShellException) {
+        final QuizShellException error = (QuizShellException) cause;
+        quizShell.getCohort().error(error.getCategory());
+        quizShell.error(quizShell.getLoc().getMessage("error-setting", key,
+            error.getMessage(quizShell.getLoc())));
+        return false;
+      }
+      quizShell.error(
+          quizShell.getLoc().getMessage(
               "error-setting",
               key,
               e.getCause() == null ? e : e.getCause()));
@@ -57,12 +144,26 @@ public boolean set(String key, String value, boolean quiet) {
     return false;
   }
 
+  /**
+   * Set properties specified as system properties
+   * with {@link #PROPERTY_PREFIX} e.g. {@code -Dquizshell.taskBank=tasks.qtb}.
+   */
+  void setFromSystemProperties() {
+    for (String name : propertyNamesMixed()) {
+      final String value = System.getProperty(PROPERTY_PREFIX + name);
+      if (value != null) {
+        set(name, value, true);
+      }
+    }
+  }
+
   Set<String> propertyNamesMixed() {
     TreeSet<String> names = new TreeSet<>();
 
-    // get all the values from getXXX methods
+    // get all the values from public getXXX methods
     for (Method method : getClass().getDeclaredMethods()) {
-      if (!method.getName().startsWith("get")) {
+      if (!method.getName().startsWith("get")
+          || !Modifier.isPublic(method.getModifiers())) {
         continue;
       }
 
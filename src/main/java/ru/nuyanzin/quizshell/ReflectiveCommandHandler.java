@@ -1,5 +1,7 @@
 package ru.nuyanzin.quizshell;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.util.Locale;
 
 /**
@@ -27,6 +29,13 @@
    */
   private final String loweredCommandName;
 
+  /**
+   * Method to execute the command, it is looked up once.
+   * Unlike {@link java.lang.reflect.Method} a method handle does not wrap
+   * exceptions of the command, so input errors stay cheap.
+   */
+  private final MethodHandle method;
+
   /**
    * ReflectiveCommandHandler constructor.
    *
@@ -41,6 +50,15 @@ public ReflectiveCommandHandler(final QuizShell shell,
     this.loweredCommandName = name.toLowerCase(Locale.ROOT);
     this.commands = commandsInstance;
     this.shell = shell;
+    try {
+      this.method = MethodHandles.publicLookup().unreflect(
+          commandsInstance.getClass()
+              .getMethod(loweredCommandName, String.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalArgumentException(
+          Loc.getLocMessage("no-method", loweredCommandName,
+              commandsInstance.getClass().getName()), e);
+    }
   }
 
   /**
@@ -52,16 +70,14 @@ public String getName() {
   }
 
   /**
-   * Looks up for a method to execute the command from the command line
-   * and calls this method.
+   * Calls the method to execute the command from the command line.
    *
    * @param line The full command line to execute
    */
   @Override
   public void execute(final String line) {
     try {
-      commands.getClass().getMethod(getName(), String.class)
-          .invoke(commands, line);
+      method.invoke(commands, line);
     } catch (Throwable t) {
       shell.handleException(t);
     }
@@ -42,8 +42,8 @@ public Object invoke(Object on, Class defClass, String methodName, List args)
     }
 
     if (candidateMethods.size() == 0) {
-      throw new IllegalArgumentException(
-          Loc.getLocMessage("no-method", methodName, c.getName()));
+      throw new QuizShellException(QuizShellException.Category.PROPERTY,
+          "no-method", methodName, c.getName());
     }
 
     for (Method method : candidateMethods) {
@@ -76,28 +76,45 @@ public static Object[] convert(List objects, Class[] toTypes)
     return converted;
   }
 
+  /**
+   * Convert the value to the type.
+   *
+   * @param ob     value
+   * @param toType type
+   * @return converted value or null if the type is not supported
+   * @throws ClassNotFoundException if the type is {@link Class}
+   *                                and there is no such class
+   * @throws QuizShellException     if a number is expected
+   *                                but the value is not a number
+   */
   public static Object convert(Object ob, Class toType)
       throws ClassNotFoundException {
     if (ob == null || ob.toString().equals("null")) {
       return null;
     }
-    if (toType == String.class) {
-      return ob.toString();
-    } else if (toType == Byte.class || toType == byte.class) {
-      return Byte.valueOf(ob.toString());
-    } else if (toType == Character.class || toType == char.class) {
-      return ob.toString().charAt(0);
-    } else if (toType == Short.class || toType == short.class) {
-      return Short.valueOf(ob.toString());
-    } else if (toType == Integer.class || toType == int.class) {
-      return Integer.valueOf(ob.toString());
-    } else if (toType == Long.class || toType == long.class) {
-      return Long.valueOf(ob.toString());
-    } else if (toType == Double.class || toType == double.class) {
-      return Double.valueOf(ob.toString());
-    } else if (toType == Float.class || toType == float.class) {
-      return Float.valueOf(ob.toString());
-    } else if (toType == Boolean.class || toType == boolean.class) {
+    try {
+      if (toType == String.class) {
+        return ob.toString();
+      } else if (toType == Byte.class || toType == byte.class) {
+        return Byte.valueOf(checkInteger(ob.toString()));
+      } else if (toType == Character.class || toType == char.class) {
+        return ob.toString().charAt(0);
+      } else if (toType == Short.class || toType == short.class) {
+        return Short.valueOf(checkInteger(ob.toString()));
+      } else if (toType == Integer.class || toType == int.class) {
+        return Integer.valueOf(checkInteger(ob.toString()));
+      } else if (toType == Long.class || toType == long.class) {
+        return Long.valueOf(checkInteger(ob.toString()));
+      } else if (toType == Double.class || toType == double.class) {
+        return Double.valueOf(ob.toString());
+      } else if (toType == Float.class || toType == float.class) {
+        return Float.valueOf(ob.toString());
+      }
+    } catch (NumberFormatException e) {
+      // out of range or not a floating point number
+      throw notNumber(ob.toString());
+    }
+    if (toType == Boolean.class || toType == boolean.class) {
       return ob.toString().equals("true")
           || ob.toString().equals(true + "")
           || ob.toString().equals("1")
@@ -109,6 +126,29 @@ public static Object convert(Object ob, Class toType)
 
     return null;
   }
+
+  /**
+   * Check the value is an integer before parsing it,
+   * so typos do not cost a {@link NumberFormatException}.
+   */
+  private static String checkInteger(String value) {
+    final int start =
+        value.startsWith("-") || value.startsWith("+") ? 1 : 0;
+    if (start == value.length()) {
+      throw notNumber(value);
+    }
+    for (int i = start; i < value.length(); i++) {
+      if (value.charAt(i) < '0' || value.charAt(i) > '9') {
+        throw notNumber(value);
+      }
+    }
+    return value;
+  }
+
+  private static QuizShellException notNumber(String value) {
+    return new QuizShellException(QuizShellException.Category.NUMBER,
+        "value-should-be-number", value);
+  }
 }
 
 // End Reflector.java
@@ -0,0 +1,96 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.Arrays;
+
+/**
+ * Batch of answered tasks stored column by column.
+ *
+ * <p>A batch is filled by one session and then handed over
+ * to a {@link ResultsWriter}, after that it is not modified any more.
+ */
+final class ResultsBatch {
+  private final long[] timestamps;
+  private final TaskShape[] shapes;
+  /**
+   * Offsets of operands of every row in {@link #operands},
+   * operands of row i are in {@code [offsets[i], offsets[i + 1])}.
+   */
+  private final int[] offsets;
+  private final int[] answers;
+  private final boolean[] correct;
+  private int[] operands;
+  private int size;
+
+  ResultsBatch(int capacity) {
+    timestamps = new long[capacity];
+    shapes = new TaskShape[capacity];
+    offsets = new int[capacity + 1];
+    answers = new int[capacity];
+    correct = new boolean[capacity];
+    operands = new int[capacity * 2];
+  }
+
+  /**
+   * Add the answered task.
+   *
+   * @param timestamp time of the answer in milliseconds
+   * @param shape     shape of the task
+   * @param taskOperands operands of the task
+   * @param answer    answer of the user
+   * @param isCorrect whether the answer is correct
+   * @return true if the batch is full
+   */
+  boolean add(long timestamp, TaskShape shape, int[] taskOperands,
+              int answer, boolean isCorrect) {
+    final int offset = offsets[size];
+    if (offset + taskOperands.length > operands.length) {
+      operands = Arrays.copyOf(operands,
+          Math.max(operands.length * 2, offset + taskOperands.length));
+    }
+    System.arraycopy(taskOperands, 0, operands, offset, taskOperands.length);
+    timestamps[size] = timestamp;
+    shapes[size] = shape;
+    answers[size] = answer;
+    correct[size] = isCorrect;
+    offsets[++size] = offset + taskOperands.length;
+    return size == timestamps.length;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  long getTimestamp(int row) {
+    return timestamps[row];
+  }
+
+  TaskShape getShape(int row) {
+    return shapes[row];
+  }
+
+  int getOperandsOffset(int row) {
+    return offsets[row];
+  }
+
+  int getOperandsCount(int row) {
+    return offsets[row + 1] - offsets[row];
+  }
+
+  int getOperand(int index) {
+    return operands[index];
+  }
+
+  int getAnswer(int row) {
+    return answers[row];
+  }
+
+  boolean isCorrect(int row) {
+    return correct[row];
+  }
+}
+
+// End ResultsBatch.java
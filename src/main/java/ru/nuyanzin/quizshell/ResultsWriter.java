@@ -0,0 +1,252 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends answered tasks to a results file.
+ *
+ * <p>Sessions fill {@link ResultsBatch}es and hand them over with
+ * {@link #write(ResultsBatch)}, the batches are encoded and written
+ * by a background thread, so the prompt never waits for the disk.
+ * At most {@link #MAX_PENDING_BATCHES} batches wait for the thread,
+ * a session handing over one more waits for the disk.
+ * When an existing file is opened, the end of the record torn
+ * by a crash is truncated and a file of another format is moved
+ * to {@code <file>.<n>}, so new records are always readable.
+ * Writers are cached per file, so sessions of the process writing
+ * to the same file share one writer.
+ *
+ * <p>Files with {@code .csv} extension are written
+ * by {@link CsvResultsWriter}, others by {@link ColumnarResultsWriter}.
+ */
+public abstract class ResultsWriter {
+  /**
+   * Number of answers in a batch.
+   */
+  static final int BATCH_SIZE = 1024;
+
+  /**
+   * Maximum number of batches waiting for the writer thread.
+   */
+  static final int MAX_PENDING_BATCHES = 16;
+
+  /**
+   * Maximum time to wait for pending batches on close.
+   */
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  /**
+   * Writers already opened in this process.
+   */
+  private static final ConcurrentMap<Path, ResultsWriter> WRITERS =
+      new ConcurrentHashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(
+        new Thread(ResultsWriter::closeAll, "quizshell-results-close"));
+  }
+
+  private final Path path;
+  private final ExecutorService executor;
+  private OutputStream out;
+
+  /**
+   * Constructor.
+   *
+   * @param path file to append to
+   */
+  protected ResultsWriter(final Path path) {
+    this.path = path;
+    this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(MAX_PENDING_BATCHES),
+        runnable -> {
+          final Thread thread = new Thread(
+              runnable, "quizshell-results-" + path.getFileName());
+          thread.setDaemon(true);
+          return thread;
+        },
+        ResultsWriter::waitForQueue);
+  }
+
+  /**
+   * Wait until the writer thread takes a pending batch instead
+   * of rejecting the new one.
+   */
+  private static void waitForQueue(Runnable task,
+                                   ThreadPoolExecutor executor) {
+    if (executor.isShutdown()) {
+      throw new RejectedExecutionException();
+    }
+    try {
+      executor.getQueue().put(task);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException(e);
+    }
+  }
+
+  /**
+   * Get the writer for the file, the writer is created only once
+   * per process.
+   *
+   * @param file results file
+   * @return the writer
+   */
+  public static ResultsWriter open(final String file) {
+    final Path path = Paths.get(file).toAbsolutePath().normalize();
+    return WRITERS.computeIfAbsent(path, p ->
+        p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv")
+            ? new CsvResultsWriter(p)
+            : new ColumnarResultsWriter(p));
+  }
+
+  /**
+   * Close all the writers waiting for the pending batches.
+   */
+  static void closeAll() {
+    for (ResultsWriter writer : WRITERS.values()) {
+      writer.close();
+    }
+    WRITERS.clear();
+  }
+
+  /**
+   * Write the batch in background, the batch should not be modified after.
+   *
+   * @param batch batch to write
+   */
+  void write(final ResultsBatch batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    executor.execute(() -> {
+      try {
+        if (out == null) {
+          open();
+        }
+        encode(batch, out);
+        out.flush();
+      } catch (IOException e) {
+        System.err.println(
+            Loc.getLocMessage("results-not-written", path, e));
+        // the file is repaired when it is opened again
+        closeQuietly();
+      }
+    });
+  }
+
+  /**
+   * Open the file to append, the existing file is repaired first.
+   */
+  private void open() throws IOException {
+    if (Files.exists(path) && Files.size(path) > 0) {
+      final long size = Files.size(path);
+      final long length = validLength(path);
+      if (length < 0) {
+        int index = 1;
+        Path moved;
+        while (Files.exists(moved =
+            path.resolveSibling(path.getFileName() + "." + index))) {
+          index++;
+        }
+        Files.move(path, moved);
+        System.err.println(
+            Loc.getLocMessage("results-moved", path, moved));
+      } else if (length < size) {
+        try (FileChannel channel =
+                 FileChannel.open(path, StandardOpenOption.WRITE)) {
+          channel.truncate(length);
+        }
+        System.err.println(
+            Loc.getLocMessage("results-truncated", path, size - length));
+      }
+    }
+    final boolean isNew = !Files.exists(path) || Files.size(path) == 0;
+    out = new BufferedOutputStream(Files.newOutputStream(path,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    if (isNew) {
+      writeHeader(out);
+    }
+  }
+
+  private void closeQuietly() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      // the error of the write is already reported
+    }
+    out = null;
+  }
+
+  private void close() {
+    executor.execute(() -> {
+      try {
+        if (out != null) {
+          out.close();
+        }
+      } catch (IOException e) {
+        System.err.println(
+            Loc.getLocMessage("results-not-written", path, e));
+      }
+    });
+    executor.shutdown();
+    try {
+      executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Write the header of a new file.
+   *
+   * @param out stream to write to
+   * @throws IOException in case of I/O errors
+   */
+  protected abstract void writeHeader(OutputStream out) throws IOException;
+
+  /**
+   * Length of the readable part of the existing file: the header
+   * and all the complete records.
+   *
+   * @param path existing file
+   * @return the length or -1 if the file has another format
+   * @throws IOException in case of I/O errors
+   */
+  abstract long validLength(Path path) throws IOException;
+
+  /**
+   * Encode the batch.
+   *
+   * @param batch batch to encode
+   * @param out   stream to write to
+   * @throws IOException in case of I/O errors
+   */
+  abstract void encode(ResultsBatch batch, OutputStream out)
+      throws IOException;
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+}
+
+// End ResultsWriter.java
@@ -0,0 +1,272 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays recorded session scripts in parallel, e.g. for regression tests.
+ *
+ * <p>Every script is run in its own session built by
+ * {@link QuizShell.Builder} with its own options, cohort statistics,
+ * classes, a fixed clock and a random seeded from the script name,
+ * so the transcript of a script does not depend on other scripts
+ * or on the order they are run. Transcripts could be written to a directory
+ * and compared with expected ones.
+ */
+public final class ScriptReplay {
+  /**
+   * Clock of replayed sessions, so transcripts do not depend on time.
+   */
+  private static final Clock CLOCK =
+      Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+
+  /**
+   * Extension of transcript files.
+   */
+  private static final String TRANSCRIPT_EXTENSION = ".out";
+
+  private final List<Path> scripts;
+  private final Path outDir;
+  private final Path expectedDir;
+  private final int threads;
+  private final long seed;
+
+  /**
+   * Constructor.
+   *
+   * @param scripts     scripts to replay
+   * @param outDir      directory to write transcripts to or null
+   * @param expectedDir directory of expected transcripts or null
+   * @param threads     number of scripts replayed at the same time
+   * @param seed        seed of randoms of sessions, the seed of a session
+   *                    is mixed with the name of its script
+   */
+  public ScriptReplay(final List<Path> scripts, final Path outDir,
+                      final Path expectedDir, final int threads,
+                      final long seed) {
+    if (threads <= 0) {
+      throw new QuizShellException(QuizShellException.Category.NUMBER,
+          "replay-wrong-threads", threads);
+    }
+    this.scripts = scripts;
+    this.outDir = outDir;
+    this.expectedDir = expectedDir;
+    this.threads = threads;
+    this.seed = seed;
+  }
+
+  /**
+   * Find scripts: all the files of a directory or files of a directory
+   * matching the glob e.g. {@code sessions/*.txt}.
+   *
+   * @param dirOrGlob directory or glob
+   * @return scripts sorted by name
+   * @throws IOException in case of I/O errors
+   */
+  public static List<Path> findScripts(final String dirOrGlob)
+      throws IOException {
+    // a glob is not a path on every platform, e.g. '*' on Windows
+    final boolean isGlob = dirOrGlob.matches(".*[*?\\[{].*");
+    final Path dir;
+    final PathMatcher matcher;
+    if (!isGlob && Files.isDirectory(Paths.get(dirOrGlob))) {
+      dir = Paths.get(dirOrGlob);
+      matcher = file -> true;
+    } else {
+      final int separator = Math.max(dirOrGlob.lastIndexOf('/'),
+          dirOrGlob.lastIndexOf(File.separatorChar));
+      // the separator of a glob of the root directory is the directory
+      dir = Paths.get(separator < 0
+          ? "" : dirOrGlob.substring(0, Math.max(separator, 1)));
+      matcher = FileSystems.getDefault().getPathMatcher(
+          "glob:" + dirOrGlob.substring(separator + 1));
+    }
+    final List<Path> scripts = new ArrayList<>();
+    try (DirectoryStream<Path> files =
+             Files.newDirectoryStream(dir.toAbsolutePath())) {
+      for (Path file : files) {
+        if (matcher.matches(file.getFileName())
+            && Files.isRegularFile(file)) {
+          scripts.add(file);
+        }
+      }
+    }
+    Collections.sort(scripts);
+    return scripts;
+  }
+
+  /**
+   * Replay the scripts and print the summary.
+   *
+   * @return true if all the scripts are replayed and transcripts
+   *         are equal to the expected ones
+   * @throws IOException          in case of I/O errors
+   * @throws InterruptedException if interrupted while waiting
+   *                              for the scripts
+   */
+  public boolean run() throws IOException, InterruptedException {
+    if (outDir != null) {
+      Files.createDirectories(outDir);
+    }
+    final List<Callable<Boolean>> replays = new ArrayList<>();
+    for (Path script : scripts) {
+      replays.add(() -> replay(script));
+    }
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final long start = System.nanoTime();
+    final List<Future<Boolean>> results;
+    try {
+      results = executor.invokeAll(replays);
+    } finally {
+      executor.shutdown();
+    }
+    final long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+    int different = 0;
+    int failed = 0;
+    for (int i = 0; i < results.size(); i++) {
+      final Path script = scripts.get(i);
+      try {
+        if (!results.get(i).get()) {
+          different++;
+          System.out.println(Loc.getLocMessage("replay-different",
+              script, expectedDir.resolve(transcriptName(script))));
+        }
+      } catch (ExecutionException e) {
+        failed++;
+        System.out.println(
+            Loc.getLocMessage("replay-failed", script, e.getCause()));
+      }
+    }
+    System.out.println(Loc.getLocMessage("replay-summary", scripts.size(),
+        millis, scripts.size() * 1000d / millis, different, failed));
+    return different == 0 && failed == 0;
+  }
+
+  /**
+   * Replay the script in a new session.
+   *
+   * @return false if the transcript differs from the expected one
+   */
+  private boolean replay(Path script) throws IOException {
+    final byte[] input = Files.readAllBytes(script);
+    final ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+    QuizShell.builder()
+        .input(new ByteArrayInputStream(input))
+        .output(transcript)
+        .error(transcript)
+        .echo(true)
+        .clock(CLOCK)
+        .random(new Random(
+            seed * 31 + script.getFileName().toString().hashCode()))
+        .cohort(new CohortStats())
+        .classrooms(new Classrooms())
+        .build()
+        .run();
+    final byte[] bytes = transcript.toByteArray();
+    final String name = transcriptName(script);
+    if (outDir != null) {
+      Files.write(outDir.resolve(name), bytes);
+    }
+    if (expectedDir == null) {
+      return true;
+    }
+    final Path expected = expectedDir.resolve(name);
+    return Files.exists(expected)
+        && Arrays.equals(bytes, Files.readAllBytes(expected));
+  }
+
+  private static String transcriptName(Path script) {
+    return script.getFileName() + TRANSCRIPT_EXTENSION;
+  }
+
+  /**
+   * Replay scripts, the process exits with 1 if some scripts failed
+   * or their transcripts differ from the expected ones.
+   *
+   * @param args {@code --replay <dir|glob>} and optionally
+   *             {@code --expected <dir>}, {@code --out <dir>},
+   *             {@code --threads <n>}, {@code --seed <n>}
+   */
+  public static void main(final String[] args) {
+    String scripts = null;
+    Path outDir = null;
+    Path expectedDir = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    long seed = 0;
+    try {
+      for (int i = 0; i < args.length; i += 2) {
+        if (i + 1 == args.length) {
+          System.out.println(Loc.getLocMessage("usage-start"));
+          return;
+        }
+        switch (args[i]) {
+        case "--replay":
+          scripts = args[i + 1];
+          break;
+        case "--out":
+          outDir = Paths.get(args[i + 1]).toAbsolutePath();
+          break;
+        case "--expected":
+          expectedDir = Paths.get(args[i + 1]).toAbsolutePath();
+          break;
+        case "--threads":
+          threads = Integer.parseInt(args[i + 1]);
+          break;
+        case "--seed":
+          seed = Long.parseLong(args[i + 1]);
+          break;
+        default:
+          System.out.println(Loc.getLocMessage("usage-start"));
+          return;
+        }
+      }
+    } catch (NumberFormatException e) {
+      System.out.println(Loc.getLocMessage("usage-start"));
+      return;
+    }
+    if (scripts == null) {
+      System.out.println(Loc.getLocMessage("usage-start"));
+      return;
+    }
+    boolean isPassed;
+    try {
+      isPassed = new ScriptReplay(findScripts(scripts),
+          outDir, expectedDir, threads, seed).run();
+    } catch (QuizShellException e) {
+      System.out.println(e.getMessage());
+      isPassed = false;
+    } catch (IOException e) {
+      System.out.println(Loc.getLocMessage("replay-not-read", scripts, e));
+      isPassed = false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      isPassed = false;
+    }
+    if (!isPassed) {
+      System.exit(1);
+    }
+  }
+}
+
+// End ScriptReplay.java
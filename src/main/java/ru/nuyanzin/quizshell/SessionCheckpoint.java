@@ -0,0 +1,387 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoint of a session to resume it after a restart of the process.
+ *
+ * <p>File format: int magic 'QSCP', int version and then records,
+ * every record starts with its type:
+ * <pre>
+ * SNAPSHOT    options as short count and pairs of UTF name and value,
+ *             long tasks, long answers, long correct answers,
+ *             boolean has drill and the drill if it has
+ * DRILL       the drill: UTF template, int maximum number,
+ *             int number of tasks, long seed, int next task
+ * ANSWER      boolean correct
+ * DRILL_END
+ * </pre>
+ * A snapshot is written at command boundaries, it replaces the file.
+ * Records of the drill and answers are appended after it.
+ * The random of the session can not be saved, so every drill has
+ * its own random with a seed drawn from the random of the session,
+ * the seed is saved and tasks of the drill are generated again
+ * on resume.
+ *
+ * <p>Records are encoded by the session and written by a background
+ * thread shared by all the checkpoints of the process,
+ * so the prompt never waits for the disk.
+ */
+final class SessionCheckpoint {
+  private static final int MAGIC = 0x51534350;
+  private static final int VERSION = 1;
+
+  private static final byte SNAPSHOT = 1;
+  private static final byte DRILL = 2;
+  private static final byte ANSWER = 3;
+  private static final byte DRILL_END = 4;
+
+  private static final byte[] CORRECT_ANSWER = {ANSWER, 1};
+  private static final byte[] WRONG_ANSWER = {ANSWER, 0};
+  private static final byte[] END_OF_DRILL = {DRILL_END};
+
+  /**
+   * Maximum time to wait for pending records on exit.
+   */
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  private static final ExecutorService WRITER =
+      Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "quizshell-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      WRITER.shutdown();
+      try {
+        WRITER.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "quizshell-checkpoint-close"));
+  }
+
+  private final Path path;
+  private final Path tmpPath;
+
+  /**
+   * Buffer to encode records, it is used only by the session.
+   */
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final DataOutputStream data = new DataOutputStream(buffer);
+
+  /**
+   * Stream to append records to, it is used only by the writer thread.
+   */
+  private OutputStream out;
+
+  /**
+   * Constructor.
+   *
+   * @param file checkpoint file
+   */
+  SessionCheckpoint(final String file) {
+    this.path = Paths.get(file).toAbsolutePath().normalize();
+    this.tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+  }
+
+  /**
+   * Write the snapshot of the session instead of the current checkpoint.
+   *
+   * @param options options of the session
+   * @param stats   tasks, answers and correct answers of the session
+   * @param drill   drill in progress or null
+   */
+  void snapshot(final Properties options, final long[] stats,
+                final Drill drill) {
+    buffer.reset();
+    try {
+      data.writeInt(MAGIC);
+      data.writeInt(VERSION);
+      data.writeByte(SNAPSHOT);
+      data.writeShort(options.size());
+      for (String name : options.stringPropertyNames()) {
+        data.writeUTF(name);
+        data.writeUTF(options.getProperty(name));
+      }
+      for (long stat : stats) {
+        data.writeLong(stat);
+      }
+      data.writeBoolean(drill != null);
+      if (drill != null) {
+        writeDrill(drill);
+      }
+    } catch (IOException e) {
+      // writing to a byte array does not fail
+      throw new IllegalStateException(e);
+    }
+    final byte[] record = buffer.toByteArray();
+    WRITER.execute(() -> {
+      try {
+        if (out != null) {
+          out.close();
+          out = null;
+        }
+        Files.write(tmpPath, record);
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        out = new BufferedOutputStream(
+            Files.newOutputStream(path, StandardOpenOption.APPEND));
+      } catch (IOException e) {
+        System.err.println(
+            Loc.getLocMessage("checkpoint-not-written", path, e));
+      }
+    });
+  }
+
+  /**
+   * Append the start of the drill.
+   *
+   * @param drill the drill
+   */
+  void drillStarted(final Drill drill) {
+    buffer.reset();
+    try {
+      data.writeByte(DRILL);
+      writeDrill(drill);
+    } catch (IOException e) {
+      // writing to a byte array does not fail
+      throw new IllegalStateException(e);
+    }
+    append(buffer.toByteArray());
+  }
+
+  /**
+   * Append the answer to the current task of the drill.
+   *
+   * @param correct whether the answer is correct
+   */
+  void answered(final boolean correct) {
+    append(correct ? CORRECT_ANSWER : WRONG_ANSWER);
+  }
+
+  /**
+   * Append the end of the drill.
+   */
+  void drillEnded() {
+    append(END_OF_DRILL);
+  }
+
+  /**
+   * Wait until the records of all the checkpoints are written.
+   *
+   * @throws InterruptedException if the thread is interrupted
+   */
+  static void awaitWritten() throws InterruptedException {
+    try {
+      WRITER.submit(() -> { }).get();
+    } catch (ExecutionException e) {
+      // an empty task does not fail
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void writeDrill(Drill drill) throws IOException {
+    data.writeUTF(drill.template);
+    data.writeInt(drill.maxNumber);
+    data.writeInt(drill.total);
+    data.writeLong(drill.seed);
+    data.writeInt(drill.next);
+  }
+
+  private void append(final byte[] record) {
+    WRITER.execute(() -> {
+      if (out == null) {
+        // the snapshot was not written
+        return;
+      }
+      try {
+        out.write(record);
+        out.flush();
+      } catch (IOException e) {
+        System.err.println(
+            Loc.getLocMessage("checkpoint-not-written", path, e));
+      }
+    });
+  }
+
+  /**
+   * Read the checkpoint, a not completed last record is ignored.
+   *
+   * @return state of the session or null if there is no checkpoint
+   * @throws IOException in case of I/O errors
+   */
+  State read() throws IOException {
+    if (!Files.exists(path)) {
+      return null;
+    }
+    final State state = new State();
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(
+            Loc.getLocMessage("checkpoint-wrong-format", path));
+      }
+      int type;
+      while ((type = in.read()) >= 0) {
+        switch (type) {
+        case SNAPSHOT:
+          state.options.clear();
+          final int count = in.readShort();
+          for (int i = 0; i < count; i++) {
+            state.options.put(in.readUTF(), in.readUTF());
+          }
+          for (int i = 0; i < state.stats.length; i++) {
+            state.stats[i] = in.readLong();
+          }
+          state.drill = in.readBoolean() ? readDrill(in) : null;
+          break;
+        case DRILL:
+          state.drill = readDrill(in);
+          break;
+        case ANSWER:
+          state.answered(in.readBoolean());
+          break;
+        case DRILL_END:
+          state.drill = null;
+          break;
+        default:
+          throw new IOException(
+              Loc.getLocMessage("checkpoint-wrong-format", path));
+        }
+      }
+    } catch (EOFException e) {
+      // the process stopped while the record was written
+    }
+    return state;
+  }
+
+  private static Drill readDrill(DataInputStream in) throws IOException {
+    final Drill drill = new Drill(in.readUTF(), in.readInt(), in.readInt(),
+        in.readLong());
+    drill.next = in.readInt();
+    return drill;
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  /**
+   * Drill: tasks of a command, e.g. {@code plus 5 10}.
+   */
+  static final class Drill {
+    private final String template;
+    private final int maxNumber;
+    private final int total;
+    private final long seed;
+    /**
+     * Index of the current task.
+     */
+    private int next;
+
+    /**
+     * Constructor.
+     *
+     * @param template  template of the task shape
+     * @param maxNumber maximum number
+     * @param total     number of tasks
+     * @param seed      seed of the random of the drill
+     */
+    Drill(String template, int maxNumber, int total, long seed) {
+      this.template = template;
+      this.maxNumber = maxNumber;
+      this.total = total;
+      this.seed = seed;
+    }
+
+    String getTemplate() {
+      return template;
+    }
+
+    int getMaxNumber() {
+      return maxNumber;
+    }
+
+    int getTotal() {
+      return total;
+    }
+
+    long getSeed() {
+      return seed;
+    }
+
+    int getNext() {
+      return next;
+    }
+
+    /**
+     * Move to the next task.
+     */
+    void next() {
+      next++;
+    }
+  }
+
+  /**
+   * State of a session read from a checkpoint.
+   */
+  static final class State {
+    private final Map<String, String> options = new TreeMap<>();
+    /**
+     * Tasks, answers and correct answers.
+     */
+    private final long[] stats = new long[3];
+    private Drill drill;
+
+    private void answered(boolean correct) {
+      stats[1]++;
+      if (correct) {
+        stats[0]++;
+        stats[2]++;
+        if (drill != null) {
+          drill.next();
+        }
+      }
+    }
+
+    Map<String, String> getOptions() {
+      return options;
+    }
+
+    long[] getStats() {
+      return stats;
+    }
+
+    /**
+     * @return drill in progress or null
+     */
+    Drill getDrill() {
+      return drill;
+    }
+  }
+}
+
+// End SessionCheckpoint.java
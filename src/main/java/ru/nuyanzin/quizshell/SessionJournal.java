@@ -0,0 +1,631 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Append-only journal of sessions: input lines, commands, tasks
+ * and answers.
+ *
+ * <p>File format: int magic 'QSJR', int version, long run and then
+ * records:
+ * <pre>
+ * int length of the rest of the record, byte type, int session,
+ * long time in milliseconds and the payload of the type:
+ * SESSION     UTF-8 learner
+ * LINE        UTF-8 input line
+ * COMMAND     UTF-8 command name
+ * TASK        UTF-8 task with its number
+ * ANSWER      boolean correct, UTF-8 answer
+ * </pre>
+ * Run is the start time of the process which wrote the file,
+ * sessions are numbered from 1 in every process,
+ * so a session is identified by its run and its number.
+ * Sessions encode records into their own {@link Recorder}s and hand
+ * them over when they flush the output, i.e. before waiting for the user.
+ * A background thread per file writes all the records handed over
+ * since its last write at once and forces them to the disk, so the prompt
+ * never waits for the disk and sessions share the cost of a commit.
+ * A file bigger than {@link #MAX_FILE_SIZE} is renamed to
+ * {@code <file>.<n>} and a new one is started, a journal is read
+ * with {@link #main(String[])} from the oldest file to the current one,
+ * sessions are numbered again in the order of their start.
+ */
+public final class SessionJournal {
+  private static final int MAGIC = 0x51534A52;
+  private static final int VERSION = 2;
+
+  private static final byte SESSION = 1;
+  private static final byte LINE = 2;
+  private static final byte COMMAND = 3;
+  private static final byte TASK = 4;
+  private static final byte ANSWER = 5;
+
+  /**
+   * Size of type, session and time of a record.
+   */
+  private static final int RECORD_HEADER_SIZE = 1 + 4 + 8;
+
+  /**
+   * Size of a file to start the next one.
+   */
+  static final long MAX_FILE_SIZE = 64L << 20;
+
+  /**
+   * Size of records of a session to hand them over without waiting
+   * for the flush.
+   */
+  private static final int COMMIT_SIZE = 64 << 10;
+
+  /**
+   * Maximum time to wait for pending records on close.
+   */
+  private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+  /**
+   * Mark of the end of records in the queue.
+   */
+  private static final byte[] END = new byte[0];
+
+  /**
+   * Start time of the process in milliseconds, it is written
+   * to the header of every file.
+   */
+  private static final long RUN = System.currentTimeMillis();
+
+  /**
+   * Sessions started in this process, numbers of sessions are unique
+   * in the process even if a journal is opened again.
+   */
+  private static final AtomicInteger SESSIONS = new AtomicInteger();
+
+  /**
+   * Journals already opened in this process.
+   */
+  private static final ConcurrentMap<Path, SessionJournal> JOURNALS =
+      new ConcurrentHashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(
+        new Thread(SessionJournal::closeAll, "quizshell-journal-close"));
+  }
+
+  private final Path path;
+  private final long maxFileSize;
+  private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  /**
+   * Whether the end mark is in the queue, records are not handed over
+   * after it.
+   */
+  private boolean isClosed;
+
+  /**
+   * Current file, it is used only by the writer thread.
+   */
+  private FileChannel channel;
+  private long size;
+  private int nextFileIndex;
+
+  private SessionJournal(Path path) {
+    this(path, MAX_FILE_SIZE);
+  }
+
+  /**
+   * Constructor of a journal not shared by {@link #open(String)}.
+   *
+   * @param path        journal file
+   * @param maxFileSize size of a file to start the next one
+   */
+  SessionJournal(final Path path, final long maxFileSize) {
+    this.path = path;
+    this.maxFileSize = maxFileSize;
+    this.writer = new Thread(this::writeRecords,
+        "quizshell-journal-" + path.getFileName());
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Get the journal of the file, the journal is created only once
+   * per process.
+   *
+   * @param file journal file
+   * @return the journal
+   */
+  public static SessionJournal open(final String file) {
+    return JOURNALS.computeIfAbsent(
+        Paths.get(file).toAbsolutePath().normalize(), SessionJournal::new);
+  }
+
+  /**
+   * Close all the journals waiting for the pending records.
+   */
+  static void closeAll() {
+    for (SessionJournal journal : JOURNALS.values()) {
+      journal.close();
+    }
+    JOURNALS.clear();
+  }
+
+  /**
+   * Create the recorder of a new session.
+   *
+   * @param clock clock for times of records
+   * @return the recorder
+   */
+  Recorder recorder(final Clock clock) {
+    return new Recorder(this, clock);
+  }
+
+  /**
+   * Write records of the queue until the end mark, every group
+   * of records taken at once is written and forced to the disk together.
+   */
+  private void writeRecords() {
+    final List<byte[]> group = new ArrayList<>();
+    boolean isEnd = false;
+    while (!isEnd) {
+      try {
+        group.add(queue.take());
+      } catch (InterruptedException e) {
+        break;
+      }
+      queue.drainTo(group);
+      // arrays are equal only to themselves
+      isEnd = group.remove(END);
+      try {
+        write(group);
+      } catch (IOException e) {
+        System.err.println(
+            Loc.getLocMessage("journal-not-written", path, e));
+        closeChannel();
+      }
+      group.clear();
+    }
+    closeChannel();
+  }
+
+  private void write(List<byte[]> records) throws IOException {
+    if (records.isEmpty()) {
+      return;
+    }
+    if (channel == null || size >= maxFileSize) {
+      openFile();
+    }
+    final ByteBuffer[] buffers = new ByteBuffer[records.size()];
+    long remaining = 0;
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = ByteBuffer.wrap(records.get(i));
+      remaining += buffers[i].remaining();
+    }
+    size += remaining;
+    while (remaining > 0) {
+      remaining -= channel.write(buffers);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Start a new file, the current or left by the previous process one
+   * is renamed, so records are never appended after a broken record.
+   */
+  private void openFile() throws IOException {
+    closeChannel();
+    if (nextFileIndex == 0) {
+      final TreeMap<Integer, Path> rotated = rotatedFiles(path);
+      nextFileIndex = rotated.isEmpty() ? 1 : rotated.lastKey() + 1;
+    }
+    if (Files.exists(path)) {
+      Files.move(path, path.resolveSibling(
+          path.getFileName() + "." + nextFileIndex++),
+          StandardCopyOption.ATOMIC_MOVE);
+    }
+    channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+    final ByteBuffer header = ByteBuffer.allocate(16);
+    header.putInt(MAGIC).putInt(VERSION).putLong(RUN);
+    ((Buffer) header).flip();
+    while (header.hasRemaining()) {
+      channel.write(header);
+    }
+    size = channel.size();
+  }
+
+  private void closeChannel() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      System.err.println(
+          Loc.getLocMessage("journal-not-written", path, e));
+    }
+    channel = null;
+  }
+
+  /**
+   * Hand over records to the writer.
+   *
+   * @return false if the journal is closed
+   */
+  private synchronized boolean handOver(byte[] records) {
+    if (isClosed) {
+      return false;
+    }
+    queue.add(records);
+    return true;
+  }
+
+  /**
+   * Close the journal waiting for the pending records,
+   * records handed over after it are rejected.
+   */
+  void close() {
+    synchronized (this) {
+      if (!isClosed) {
+        isClosed = true;
+        queue.add(END);
+      }
+    }
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Files of the journal from the oldest to the current one.
+   *
+   * @param path journal file
+   * @return existing files
+   * @throws IOException in case of I/O errors
+   */
+  static List<Path> files(final Path path) throws IOException {
+    final List<Path> files = new ArrayList<>(rotatedFiles(path).values());
+    if (Files.exists(path)) {
+      files.add(path);
+    }
+    return files;
+  }
+
+  /**
+   * Files renamed when they grew too big.
+   *
+   * @param path journal file
+   * @return files by their index
+   * @throws IOException in case of I/O errors
+   */
+  private static TreeMap<Integer, Path> rotatedFiles(Path path)
+      throws IOException {
+    final TreeMap<Integer, Path> rotated = new TreeMap<>();
+    final String prefix = path.getFileName() + ".";
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(
+        path.getParent(), prefix + "*")) {
+      for (Path file : files) {
+        final String index =
+            file.getFileName().toString().substring(prefix.length());
+        if (index.isEmpty()
+            || !index.chars().allMatch(c -> c >= '0' && c <= '9')) {
+          continue;
+        }
+        try {
+          rotated.put(Integer.valueOf(index), file);
+        } catch (NumberFormatException e) {
+          // not written by the journal, e.g. file.99999999999
+        }
+      }
+    }
+    return rotated;
+  }
+
+  /**
+   * Print the journal as a transcript.
+   *
+   * @param args journal file
+   */
+  public static void main(final String[] args) {
+    if (args.length != 1) {
+      System.out.println(Loc.getLocMessage("usage-journal"));
+      return;
+    }
+    final Path path = Paths.get(args[0]).toAbsolutePath().normalize();
+    try {
+      print(files(path), System.out);
+    } catch (IOException e) {
+      System.out.println(Loc.getLocMessage("journal-not-read", path, e));
+    }
+  }
+
+  /**
+   * Print records of the files, a not completed last record of a file
+   * is ignored.
+   *
+   * @param files files of the journal from the oldest
+   * @param out   stream to print to
+   * @throws IOException in case of I/O errors
+   */
+  static void print(final List<Path> files, final PrintStream out)
+      throws IOException {
+    // run and number of a session to its number in the transcript
+    final Map<String, Integer> sessions = new HashMap<>();
+    for (Path file : files) {
+      print(file, sessions, out);
+    }
+  }
+
+  private static void print(Path file, Map<String, Integer> sessions,
+      PrintStream out) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(
+            Loc.getLocMessage("journal-wrong-format", file));
+      }
+      final long run = in.readLong();
+      while (true) {
+        final int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          return;
+        }
+        if (length < RECORD_HEADER_SIZE) {
+          throw new IOException(
+              Loc.getLocMessage("journal-wrong-format", file));
+        }
+        final byte type = in.readByte();
+        final int session = in.readInt();
+        final Instant time = Instant.ofEpochMilli(in.readLong());
+        final byte[] payload = new byte[length - RECORD_HEADER_SIZE];
+        in.readFully(payload);
+        final String key;
+        int offset = 0;
+        switch (type) {
+        case SESSION:
+          key = "journal-session";
+          break;
+        case LINE:
+          key = "journal-line";
+          break;
+        case COMMAND:
+          key = "journal-command";
+          break;
+        case TASK:
+          key = "journal-task";
+          break;
+        case ANSWER:
+          if (payload.length == 0) {
+            throw new IOException(
+                Loc.getLocMessage("journal-wrong-format", file));
+          }
+          key = payload[0] != 0
+              ? "journal-correct-answer" : "journal-wrong-answer";
+          offset = 1;
+          break;
+        default:
+          // records of newer versions
+          continue;
+        }
+        final Integer number = sessions.computeIfAbsent(
+            run + "/" + session, k -> sessions.size() + 1);
+        out.println(Loc.getLocMessage(key, time, number,
+            StandardCharsets.UTF_8.decode(ByteBuffer.wrap(
+                payload, offset, payload.length - offset)).toString()));
+      }
+    } catch (EOFException e) {
+      // the process stopped while the record was written
+    }
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  /**
+   * Records of a session not yet handed over to the journal.
+   *
+   * <p>Records are encoded into a reused buffer without creating
+   * strings. It is NOT threadsafe.
+   */
+  static final class Recorder {
+    private final SessionJournal journal;
+    /**
+     * Number of the session in the process, it is given on the start.
+     */
+    private int session;
+    /**
+     * Whether the journal rejected records of the session.
+     */
+    private boolean isRejected;
+    private final Clock clock;
+    private byte[] buffer = new byte[1024];
+    private int length;
+    /**
+     * Start of the current record.
+     */
+    private int recordStart;
+
+    private Recorder(SessionJournal journal, Clock clock) {
+      this.journal = journal;
+      this.clock = clock;
+    }
+
+    /**
+     * Record the start of the session.
+     *
+     * @param learner learner of the session
+     */
+    void started(final CharSequence learner) {
+      session = SESSIONS.incrementAndGet();
+      start(SESSION);
+      putChars(learner);
+      end();
+    }
+
+    /**
+     * Record the input line.
+     *
+     * @param line the line
+     */
+    void line(final CharSequence line) {
+      start(LINE);
+      putChars(line);
+      end();
+    }
+
+    /**
+     * Record the dispatch of the command.
+     *
+     * @param name name of the command
+     */
+    void command(final String name) {
+      start(COMMAND);
+      putChars(name);
+      end();
+    }
+
+    /**
+     * Record the task shown to the user.
+     *
+     * @param task   the task with its number encoded to UTF-8
+     * @param offset start of the task in the array
+     * @param count  number of bytes of the task
+     */
+    void task(final byte[] task, final int offset, final int count) {
+      start(TASK);
+      ensure(count);
+      System.arraycopy(task, offset, buffer, length, count);
+      length += count;
+      end();
+    }
+
+    /**
+     * Record the answer to the current task.
+     *
+     * @param answer  the answer
+     * @param correct whether the answer is correct
+     */
+    void answer(final CharSequence answer, final boolean correct) {
+      start(ANSWER);
+      ensure(1);
+      buffer[length++] = (byte) (correct ? 1 : 0);
+      putChars(answer);
+      end();
+    }
+
+    /**
+     * Hand over the records to the journal.
+     */
+    void commit() {
+      if (length == 0) {
+        return;
+      }
+      if (!journal.handOver(Arrays.copyOf(buffer, length))
+          && !isRejected) {
+        isRejected = true;
+        System.err.println(
+            Loc.getLocMessage("journal-closed", journal, session));
+      }
+      length = 0;
+    }
+
+    private void start(byte type) {
+      recordStart = length;
+      ensure(4 + RECORD_HEADER_SIZE);
+      length += 4;
+      buffer[length++] = type;
+      putInt(session);
+      final long millis = clock.millis();
+      putInt((int) (millis >>> 32));
+      putInt((int) millis);
+    }
+
+    private void end() {
+      final int recordLength = length - recordStart - 4;
+      final int end = length;
+      length = recordStart;
+      putInt(recordLength);
+      length = end;
+      if (length >= COMMIT_SIZE) {
+        commit();
+      }
+    }
+
+    private void putInt(int value) {
+      buffer[length++] = (byte) (value >>> 24);
+      buffer[length++] = (byte) (value >>> 16);
+      buffer[length++] = (byte) (value >>> 8);
+      buffer[length++] = (byte) value;
+    }
+
+    /**
+     * Encode the characters to UTF-8, malformed surrogates
+     * are replaced with '?'.
+     */
+    private void putChars(CharSequence chars) {
+      ensure(chars.length() * 3);
+      for (int i = 0; i < chars.length(); i++) {
+        final char c = chars.charAt(i);
+        if (c < 0x80) {
+          buffer[length++] = (byte) c;
+        } else if (c < 0x800) {
+          buffer[length++] = (byte) (0xC0 | c >> 6);
+          buffer[length++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < chars.length()
+            && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          final int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+          buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+          buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+          buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+          buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+          buffer[length++] = '?';
+        } else {
+          buffer[length++] = (byte) (0xE0 | c >> 12);
+          buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+          buffer[length++] = (byte) (0x80 | c & 0x3F);
+        }
+      }
+    }
+
+    private void ensure(int count) {
+      if (length + count > buffer.length) {
+        buffer = Arrays.copyOf(buffer,
+            Math.max(length + count, buffer.length * 2));
+      }
+    }
+  }
+}
+
+// End SessionJournal.java
@@ -0,0 +1,311 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read-only bank of pre-generated tasks mapped into memory.
+ *
+ * <p>File format (big endian):
+ * <pre>
+ * int     magic 'QSTB'
+ * int     version
+ * int     number of sections
+ * section index entries:
+ *   short   length of the template in bytes
+ *   byte[]  template of {@link TaskShape} in UTF-8
+ *   int     maximum number (difficulty)
+ *   byte    bytes per operand (1, 2 or 4)
+ *   int     number of records
+ *   long    offset of the first record
+ * records: fixed width, operands of {@link TaskShape} in the template order
+ * </pre>
+ *
+ * <p>Banks are cached per file, so all sessions of the process share
+ * one mapping. Sampling a task reads operands directly from the mapping
+ * and does not allocate.
+ */
+public final class TaskBank {
+  private static final int MAGIC = 0x51535442;
+  private static final int VERSION = 1;
+
+  /**
+   * Banks already mapped in this process.
+   */
+  private static final ConcurrentMap<Path, TaskBank> BANKS =
+      new ConcurrentHashMap<>();
+
+  private final Path path;
+  private final List<Section> sections;
+
+  private TaskBank(Path path, List<Section> sections) {
+    this.path = path;
+    this.sections = sections;
+  }
+
+  /**
+   * Get the bank for the file, the file is mapped only once per process.
+   *
+   * @param file bank file
+   * @return the bank
+   * @throws QuizShellException if the file could not be read
+   *                            or it is not a task bank
+   */
+  public static TaskBank load(final String file) {
+    final Path path = Paths.get(file).toAbsolutePath().normalize();
+    return BANKS.computeIfAbsent(path, TaskBank::map);
+  }
+
+  private static TaskBank map(Path path) {
+    final ByteBuffer buffer;
+    try (FileChannel channel =
+             FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      throw new QuizShellException(QuizShellException.Category.FILE, e,
+          "task-bank-not-readable", path, e);
+    }
+    try {
+      return new TaskBank(path, readSections(buffer));
+    } catch (BufferUnderflowException | IndexOutOfBoundsException
+        | IllegalArgumentException e) {
+      // the header is truncated or its fields are out of range,
+      // IllegalArgumentException is thrown for wrong task shapes too
+      throw new QuizShellException(QuizShellException.Category.FILE, e,
+          "task-bank-wrong-format", path);
+    }
+  }
+
+  /**
+   * Read the index of the bank, every field is validated,
+   * so records are never read outside of the file.
+   */
+  private static List<Section> readSections(ByteBuffer buffer) {
+    if (buffer.remaining() < 12 || buffer.getInt() != MAGIC
+        || buffer.getInt() != VERSION) {
+      throw new IllegalArgumentException();
+    }
+    final int count = buffer.getInt();
+    if (count < 0) {
+      throw new IllegalArgumentException();
+    }
+    final List<Section> sections = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final short templateLength = buffer.getShort();
+      if (templateLength < 0) {
+        throw new IllegalArgumentException();
+      }
+      final byte[] template = new byte[templateLength];
+      buffer.get(template);
+      final int maxNumber = buffer.getInt();
+      final int width = buffer.get();
+      final int size = buffer.getInt();
+      final long offset = buffer.getLong();
+      if (width != 1 && width != 2 && width != 4 || size < 0) {
+        throw new IllegalArgumentException();
+      }
+      final TaskShape shape = TaskShape.compile(
+          StandardCharsets.UTF_8.decode(ByteBuffer.wrap(template)).toString());
+      final int recordWidth = width * shape.getOperandCount();
+      if (offset < 0 || offset + (long) size * recordWidth > buffer.limit()) {
+        throw new IllegalArgumentException();
+      }
+      sections.add(new Section(
+          buffer, shape, maxNumber, width, size, (int) offset));
+    }
+    return Collections.unmodifiableList(sections);
+  }
+
+  /**
+   * Find the section with tasks for the shape and maximum number.
+   *
+   * @param shape     shape of tasks
+   * @param maxNumber maximum number of tasks
+   * @return section or null if there is no such a section in the bank
+   */
+  public Section find(final TaskShape shape, final int maxNumber) {
+    for (Section section : sections) {
+      if (section.maxNumber == maxNumber
+          && section.shape.getNormalizedTemplate()
+          .equals(shape.getNormalizedTemplate())) {
+        return section;
+      }
+    }
+    return null;
+  }
+
+  public List<Section> getSections() {
+    return sections;
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  /**
+   * Write a bank with a section per engine, the sections are filled
+   * with tasks generated by the engines.
+   *
+   * @param out     stream to write to
+   * @param engines engines to generate tasks
+   * @param counts  number of tasks to generate per engine
+   * @throws IOException in case of I/O errors
+   */
+  public static void write(final OutputStream out,
+                           final List<TaskEngine> engines,
+                           final int[] counts) throws IOException {
+    final DataOutputStream data =
+        new DataOutputStream(new BufferedOutputStream(out));
+    final List<byte[]> templates = new ArrayList<>(engines.size());
+    long offset = 12;
+    for (TaskEngine engine : engines) {
+      final byte[] template = engine.getShape().getTemplate()
+          .getBytes(StandardCharsets.UTF_8);
+      templates.add(template);
+      offset += 2 + template.length + 4 + 1 + 4 + 8;
+    }
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeInt(engines.size());
+    for (int i = 0; i < engines.size(); i++) {
+      final TaskEngine engine = engines.get(i);
+      final int width = width(engine.getMaxNumber());
+      data.writeShort(templates.get(i).length);
+      data.write(templates.get(i));
+      data.writeInt(engine.getMaxNumber());
+      data.writeByte(width);
+      data.writeInt(counts[i]);
+      data.writeLong(offset);
+      offset += (long) counts[i] * width * engine.getShape().getOperandCount();
+    }
+    for (int i = 0; i < engines.size(); i++) {
+      final TaskEngine engine = engines.get(i);
+      final int width = width(engine.getMaxNumber());
+      final int[] operands = engine.getOperands();
+      for (int j = 0; j < counts[i]; j++) {
+        engine.next();
+        for (int operand : operands) {
+          if (width == 1) {
+            data.writeByte(operand);
+          } else if (width == 2) {
+            data.writeShort(operand);
+          } else {
+            data.writeInt(operand);
+          }
+        }
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Bytes per operand, operands are never negative.
+   */
+  private static int width(int maxNumber) {
+    return maxNumber <= 0x100 ? 1 : maxNumber <= 0x10000 ? 2 : 4;
+  }
+
+  /**
+   * Generate a bank file.
+   *
+   * @param args file name followed by triples
+   *             of shape, maximum number and number of tasks
+   * @throws IOException in case of I/O errors
+   */
+  public static void main(final String[] args) throws IOException {
+    if (args.length < 4 || args.length % 3 != 1) {
+      System.out.println(Loc.getLocMessage("usage-task-bank"));
+      return;
+    }
+    final Random random = new Random();
+    final List<TaskEngine> engines = new ArrayList<>();
+    final int[] counts = new int[(args.length - 1) / 3];
+    for (int i = 1; i < args.length; i += 3) {
+      engines.add(new TaskEngine(TaskShape.compile(args[i]), random,
+          Integer.parseInt(args[i + 1])));
+      counts[i / 3] = Integer.parseInt(args[i + 2]);
+    }
+    try (OutputStream out = Files.newOutputStream(Paths.get(args[0]))) {
+      write(out, engines, counts);
+    }
+  }
+
+  /**
+   * Tasks of one shape and one maximum number.
+   */
+  public static final class Section {
+    private final ByteBuffer buffer;
+    private final TaskShape shape;
+    private final int maxNumber;
+    private final int width;
+    private final int size;
+    private final int offset;
+
+    private Section(ByteBuffer buffer, TaskShape shape, int maxNumber,
+                    int width, int size, int offset) {
+      this.buffer = buffer;
+      this.shape = shape;
+      this.maxNumber = maxNumber;
+      this.width = width;
+      this.size = size;
+      this.offset = offset;
+    }
+
+    public TaskShape getShape() {
+      return shape;
+    }
+
+    public int getMaxNumber() {
+      return maxNumber;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Read operands of the task. Only absolute reads are used,
+     * so the section could be read by many sessions at the same time.
+     *
+     * @param index    index of the task in the section
+     * @param operands operands to fill
+     */
+    void read(final int index, final int[] operands) {
+      int position = offset + index * width * operands.length;
+      for (int i = 0; i < operands.length; i++) {
+        if (width == 1) {
+          operands[i] = buffer.get(position) & 0xFF;
+        } else if (width == 2) {
+          operands[i] = buffer.getShort(position) & 0xFFFF;
+        } else {
+          operands[i] = buffer.getInt(position);
+        }
+        position += width;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return shape + " " + maxNumber + " " + size;
+    }
+  }
+}
+
+// End TaskBank.java
@@ -0,0 +1,107 @@
+package ru.nuyanzin.quizshell;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable batch of tasks generated once and given to many sessions,
+ * e.g. to all the learners of a {@link Classroom}.
+ *
+ * <p>Tasks are rendered and encoded to UTF-8 with their numbers
+ * when the batch is generated, so sessions write the same bytes
+ * to their outputs without formatting them again.
+ */
+final class TaskBatch {
+  private final TaskShape shape;
+  private final int maxNumber;
+  private final long seed;
+  private final int[] operands;
+  private final int[] results;
+  private final String[] texts;
+  private final byte[][] encodedTasks;
+
+  private TaskBatch(TaskShape shape, int maxNumber, long seed, int size) {
+    this.shape = shape;
+    this.maxNumber = maxNumber;
+    this.seed = seed;
+    this.operands = new int[size * shape.getOperandCount()];
+    this.results = new int[size];
+    this.texts = new String[size];
+    this.encodedTasks = new byte[size][];
+  }
+
+  /**
+   * Generate the batch.
+   *
+   * @param engine engine to generate tasks, its random should be created
+   *               with the seed
+   * @param size   number of tasks
+   * @param seed   seed of the random of the engine, tasks could be
+   *               generated again with it
+   * @return the batch
+   */
+  static TaskBatch generate(final TaskEngine engine, final int size,
+                            final long seed) {
+    final TaskBatch batch = new TaskBatch(
+        engine.getShape(), engine.getMaxNumber(), seed, size);
+    final int count = engine.getShape().getOperandCount();
+    for (int i = 0; i < size; i++) {
+      engine.next();
+      System.arraycopy(engine.getOperands(), 0,
+          batch.operands, i * count, count);
+      batch.results[i] = engine.getResult();
+      batch.texts[i] = engine.getText().toString();
+      batch.encodedTasks[i] = (i + 1 + ") " + batch.texts[i])
+          .getBytes(StandardCharsets.UTF_8);
+    }
+    return batch;
+  }
+
+  TaskShape getShape() {
+    return shape;
+  }
+
+  int getMaxNumber() {
+    return maxNumber;
+  }
+
+  long getSeed() {
+    return seed;
+  }
+
+  /**
+   * @return number of tasks
+   */
+  int size() {
+    return results.length;
+  }
+
+  /**
+   * Read operands of the task.
+   *
+   * @param index    index of the task
+   * @param operands array to read operands to
+   */
+  void read(final int index, final int[] operands) {
+    System.arraycopy(this.operands, index * operands.length,
+        operands, 0, operands.length);
+  }
+
+  int getResult(int index) {
+    return results[index];
+  }
+
+  String getText(int index) {
+    return texts[index];
+  }
+
+  /**
+   * @param index index of the task
+   * @return the task with its number encoded to UTF-8,
+   *         the array is shared and should not be modified
+   */
+  byte[] getEncodedTask(int index) {
+    return encodedTasks[index];
+  }
+}
+
+// End TaskBatch.java
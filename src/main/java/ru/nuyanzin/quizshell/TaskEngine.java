@@ -0,0 +1,172 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.Random;
+
+/**
+ * Generates tasks of the specified {@link TaskShape}.
+ *
+ * <p>All the buffers are allocated once in constructor and reused
+ * for every next task, so the generation of tasks does not allocate.
+ * Tasks of shapes where the right operands of '-' and '/' are single
+ * slots are valid at the first attempt, tasks of other shapes
+ * e.g. {@code _ - (_ + _)} are generated again until they are valid.
+ * If a {@link TaskBank.Section} is specified then tasks are sampled from
+ * the bank instead of being generated. If a {@link TaskBatch} is specified
+ * then tasks of the batch are taken in order.
+ * It is NOT threadsafe, every session should have its own engine.
+ */
+public final class TaskEngine {
+  /**
+   * Maximum number of attempts to generate a valid task.
+   */
+  private static final int MAX_ATTEMPTS = 10_000;
+
+  private final TaskShape shape;
+  private final Random random;
+  private final int maxNumber;
+  private final TaskBank.Section section;
+  private final TaskBatch batch;
+  /**
+   * Index of the current task of the batch.
+   */
+  private int index = -1;
+  private final int[] operands;
+  private final long[] stack;
+  private final StringBuilder text = new StringBuilder();
+  private int result;
+
+  /**
+   * Constructor.
+   *
+   * @param shape     shape of tasks to generate
+   * @param random    random to use
+   * @param maxNumber upper bound (exclusive) for operands
+   */
+  public TaskEngine(final TaskShape shape,
+                    final Random random,
+                    final int maxNumber) {
+    this(shape, random, maxNumber, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param shape     shape of tasks to generate
+   * @param random    random to use
+   * @param maxNumber upper bound (exclusive) for operands
+   * @param section   section of a task bank to sample tasks from,
+   *                  null or empty section means to generate tasks
+   */
+  public TaskEngine(final TaskShape shape,
+                    final Random random,
+                    final int maxNumber,
+                    final TaskBank.Section section) {
+    if (maxNumber <= 0) {
+      throw new QuizShellException(QuizShellException.Category.TASK,
+          "max-number-should-be-positive", maxNumber);
+    }
+    this.shape = shape;
+    this.random = random;
+    this.maxNumber = maxNumber;
+    this.section = section == null || section.size() == 0 ? null : section;
+    this.batch = null;
+    this.operands = new int[shape.getOperandCount()];
+    this.stack = new long[shape.getMaxStackDepth()];
+  }
+
+  /**
+   * Constructor of an engine taking tasks of the batch in order.
+   *
+   * @param batch batch of tasks
+   */
+  TaskEngine(final TaskBatch batch) {
+    this.shape = batch.getShape();
+    this.random = null;
+    this.maxNumber = batch.getMaxNumber();
+    this.section = null;
+    this.batch = batch;
+    this.operands = new int[shape.getOperandCount()];
+    this.stack = new long[0];
+  }
+
+  /**
+   * Generate the next task.
+   *
+   * @throws QuizShellException if it is not possible to generate
+   *                            a valid task for the shape
+   */
+  public void next() {
+    if (batch != null) {
+      index++;
+      batch.read(index, operands);
+      result = batch.getResult(index);
+      return;
+    }
+    if (section != null) {
+      section.read(random.nextInt(section.size()), operands);
+      setResult(shape.evaluate(operands, stack));
+      return;
+    }
+    for (int i = 0; i < MAX_ATTEMPTS; i++) {
+      final long value = shape.generate(random, maxNumber, operands, stack);
+      if (value != TaskShape.INVALID) {
+        setResult(value);
+        return;
+      }
+    }
+    throw new QuizShellException(QuizShellException.Category.TASK,
+        "task-shape-not-solvable", shape, maxNumber);
+  }
+
+  private void setResult(long value) {
+    if (value == TaskShape.INVALID) {
+      throw new IllegalStateException(
+          Loc.getLocMessage("task-bank-wrong-format", section));
+    }
+    result = (int) value;
+    text.setLength(0);
+    shape.render(operands, text);
+    text.append(" = ");
+  }
+
+  public TaskShape getShape() {
+    return shape;
+  }
+
+  public int getMaxNumber() {
+    return maxNumber;
+  }
+
+  /**
+   * @return operands of the current task, the array is reused by
+   *         {@link #next()}
+   */
+  int[] getOperands() {
+    return operands;
+  }
+
+  /**
+   * @return the correct answer of the current task
+   */
+  public int getResult() {
+    return result;
+  }
+
+  /**
+   * @return the rendered current task, the buffer is reused by {@link #next()}
+   */
+  public CharSequence getText() {
+    return batch == null ? text : batch.getText(index);
+  }
+
+  /**
+   * @return the current task with its number encoded to UTF-8 if tasks
+   *         are taken from a batch, otherwise null;
+   *         the array is shared and should not be modified
+   */
+  byte[] getEncodedTask() {
+    return batch == null ? null : batch.getEncodedTask(index);
+  }
+}
+
+// End TaskEngine.java
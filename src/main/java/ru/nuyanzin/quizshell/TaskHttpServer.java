@@ -0,0 +1,424 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stateless HTTP API to generate and check tasks.
+ *
+ * <ul>
+ *   <li>{@code GET /tasks?op=plus&n=5&max=10&seed=42} returns
+ *   the tasks as JSON, if the seed is not specified a random one is used
+ *   and returned</li>
+ *   <li>{@code GET|POST /check?op=plus&n=5&max=10&seed=42&answers=1,2,3}
+ *   generates the same tasks again and checks the answers, for POST
+ *   the answers could be sent in the body</li>
+ * </ul>
+ *
+ * <p>Wrong parameters are answered with 400 and unexpected failures
+ * with 500, both with a JSON error.
+ *
+ * <p>Tasks are generated with the same {@link TaskEngine} as
+ * the {@code plus} and {@code minus} commands. Responses for requests
+ * with a seed are deterministic and are cached in a bounded LRU cache.
+ */
+public final class TaskHttpServer {
+  /**
+   * Maximum number of tasks in one request.
+   */
+  static final int MAX_TASKS = 10_000;
+
+  /**
+   * Maximum number of cached responses.
+   */
+  private static final int CACHE_SIZE = 256;
+
+  /**
+   * Maximum size of a cached response, bigger ones are only streamed.
+   */
+  private static final int MAX_CACHED_RESPONSE = 64 * 1024;
+
+  private static final String JSON = "application/json; charset=utf-8";
+
+  private final HttpServer server;
+  private final ThreadPoolExecutor executor;
+  private final Map<CacheKey, byte[]> cache =
+      new LinkedHashMap<CacheKey, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<CacheKey, byte[]> e) {
+          return size() > CACHE_SIZE;
+        }
+      };
+
+  /**
+   * Constructor.
+   *
+   * @param port    port to listen to, 0 means any free port
+   * @param threads number of threads to handle requests
+   * @throws IOException if the server could not be bound
+   */
+  public TaskHttpServer(final int port, final int threads)
+      throws IOException {
+    final AtomicInteger counter = new AtomicInteger();
+    executor = new ThreadPoolExecutor(threads, threads,
+        0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 64),
+        runnable -> {
+          final Thread thread = new Thread(runnable,
+              "quizshell-http-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+    server = HttpServer.create(new InetSocketAddress(port), 0);
+    server.setExecutor(executor);
+    server.createContext("/tasks", exchange -> handle(exchange, false));
+    server.createContext("/check", exchange -> handle(exchange, true));
+  }
+
+  /**
+   * Start to serve requests.
+   */
+  public void start() {
+    server.start();
+  }
+
+  /**
+   * Stop the server waiting for the current requests at most
+   * the specified number of seconds.
+   *
+   * @param delay seconds to wait for the current requests
+   */
+  public void stop(final int delay) {
+    server.stop(delay);
+    executor.shutdown();
+  }
+
+  /**
+   * @return port the server listens to
+   */
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange, boolean check)
+      throws IOException {
+    try {
+      final Map<String, String> params =
+          parseQuery(exchange.getRequestURI().getRawQuery());
+      final TaskShape shape = toShape(params.get("op"));
+      final int n = toInt(params, "n", 5);
+      final int max = toInt(params, "max", 10);
+      if (n < 0 || n > MAX_TASKS) {
+        throw new QuizShellException(QuizShellException.Category.NUMBER,
+            "http-wrong-number-of-tasks", MAX_TASKS);
+      }
+      final boolean hasSeed = params.containsKey("seed");
+      final long seed = hasSeed
+          ? toLong(params.get("seed")) : new Random().nextLong();
+      final TaskEngine engine = new TaskEngine(shape, new Random(seed), max);
+      if (check) {
+        final String answers = params.containsKey("answers")
+            || !"POST".equals(exchange.getRequestMethod())
+            ? params.get("answers")
+            : readBody(exchange.getRequestBody());
+        stream(exchange, writer -> writeCheck(writer, engine, n, answers));
+        return;
+      }
+      if (!hasSeed) {
+        stream(exchange,
+            writer -> writeTasks(writer, engine, params.get("op"), n, seed));
+        return;
+      }
+      final CacheKey key = new CacheKey(shape, n, max, seed);
+      byte[] response;
+      synchronized (cache) {
+        response = cache.get(key);
+      }
+      if (response == null) {
+        if (n * (long) shape.getOperandCount() * 16 > MAX_CACHED_RESPONSE) {
+          stream(exchange, writer ->
+              writeTasks(writer, engine, params.get("op"), n, seed));
+          return;
+        }
+        response = toBytes(writer ->
+            writeTasks(writer, engine, params.get("op"), n, seed));
+        synchronized (cache) {
+          cache.put(key, response);
+        }
+      }
+      send(exchange, 200, response);
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, e.getMessage());
+    } catch (RuntimeException e) {
+      e.printStackTrace(System.err);
+      sendError(exchange, 500, Loc.getLocMessage("http-internal-error"));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  /**
+   * Send the error as JSON unless the response is already started,
+   * then the client sees the broken response.
+   */
+  private static void sendError(HttpExchange exchange, int code,
+                                String message) throws IOException {
+    if (exchange.getResponseCode() != -1) {
+      return;
+    }
+    send(exchange, code, toBytes(writer -> {
+      writer.write("{\"error\":");
+      writeString(writer, message);
+      writer.write("}\n");
+    }));
+  }
+
+  private static TaskShape toShape(String op) {
+    if (op == null) {
+      return TaskShape.PLUS_SHAPE;
+    }
+    switch (op.toLowerCase(Locale.ROOT)) {
+    case "plus":
+      return TaskShape.PLUS_SHAPE;
+    case "minus":
+      return TaskShape.MINUS_SHAPE;
+    default:
+      throw new QuizShellException(QuizShellException.Category.COMMAND,
+          "http-unknown-operation", op);
+    }
+  }
+
+  private static int toInt(Map<String, String> params, String name,
+                           int defaultValue) {
+    final String value = params.get(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new QuizShellException(QuizShellException.Category.NUMBER,
+          "http-wrong-parameter", name, value);
+    }
+  }
+
+  private static long toLong(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new QuizShellException(QuizShellException.Category.NUMBER,
+          "http-wrong-parameter", "seed", value);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query)
+      throws IOException {
+    final Map<String, String> params = new HashMap<>();
+    if (query == null || query.isEmpty()) {
+      return params;
+    }
+    for (String pair : query.split("&")) {
+      final int eq = pair.indexOf('=');
+      final String name = eq < 0 ? pair : pair.substring(0, eq);
+      final String value = eq < 0 ? "" : pair.substring(eq + 1);
+      params.put(URLDecoder.decode(name, StandardCharsets.UTF_8.name()),
+          URLDecoder.decode(value, StandardCharsets.UTF_8.name()));
+    }
+    return params;
+  }
+
+  private static String readBody(InputStream body) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int read;
+    while ((read = body.read(buffer)) > 0) {
+      if (out.size() + read > MAX_TASKS * 12) {
+        throw new QuizShellException(QuizShellException.Category.NUMBER,
+            "http-wrong-number-of-tasks", MAX_TASKS);
+      }
+      out.write(buffer, 0, read);
+    }
+    return out.toString(StandardCharsets.UTF_8.name());
+  }
+
+  private static void writeTasks(Writer writer, TaskEngine engine,
+                                 String op, int n, long seed)
+      throws IOException {
+    writer.write("{\"op\":");
+    writeString(writer, op == null ? "plus" : op.toLowerCase(Locale.ROOT));
+    writer.write(",\"n\":" + n + ",\"max\":" + engine.getMaxNumber()
+        + ",\"seed\":" + seed + ",\"tasks\":[");
+    for (int i = 0; i < n; i++) {
+      engine.next();
+      writer.write(i == 0 ? "\n{\"task\":" : ",\n{\"task\":");
+      final CharSequence text = engine.getText();
+      // do not send " = " in the end of the task
+      writeString(writer, text.subSequence(0, text.length() - 3).toString());
+      writer.write(",\"operands\":[");
+      final int[] operands = engine.getOperands();
+      for (int j = 0; j < operands.length; j++) {
+        if (j > 0) {
+          writer.write(',');
+        }
+        writer.write(Integer.toString(operands[j]));
+      }
+      writer.write("]}");
+    }
+    writer.write("]}\n");
+  }
+
+  private static void writeCheck(Writer writer, TaskEngine engine,
+                                 int n, String answers) throws IOException {
+    final String[] parts = answers == null || answers.trim().isEmpty()
+        ? new String[0] : answers.trim().split("[,\\s]+");
+    writer.write("{\"results\":[");
+    int correct = 0;
+    for (int i = 0; i < n; i++) {
+      engine.next();
+      boolean isCorrect = false;
+      if (i < parts.length) {
+        try {
+          isCorrect = Integer.parseInt(parts[i]) == engine.getResult();
+        } catch (NumberFormatException e) {
+          // not a number is not a correct answer
+          isCorrect = false;
+        }
+      }
+      if (isCorrect) {
+        correct++;
+      }
+      writer.write(i == 0 ? "" : ",");
+      writer.write(String.valueOf(isCorrect));
+    }
+    writer.write("],\"correct\":" + correct + ",\"total\":" + n + "}\n");
+  }
+
+  private static void writeString(Writer writer, String value)
+      throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+
+  private static byte[] toBytes(JsonWriter json) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      json.write(writer);
+    }
+    return out.toByteArray();
+  }
+
+  private static void send(HttpExchange exchange, int code, byte[] response)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", JSON);
+    exchange.sendResponseHeaders(code, response.length);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(response);
+    }
+  }
+
+  /**
+   * Stream the response with chunked encoding.
+   */
+  private static void stream(HttpExchange exchange, JsonWriter json)
+      throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", JSON);
+    exchange.sendResponseHeaders(200, 0);
+    try (Writer writer = new OutputStreamWriter(
+        exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+      json.write(writer);
+    }
+  }
+
+  /**
+   * Start the server.
+   *
+   * @param args port and number of threads
+   * @throws IOException if the server could not be bound
+   */
+  public static void main(final String[] args) throws IOException {
+    final int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    final int threads = args.length > 1
+        ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    final TaskHttpServer server = new TaskHttpServer(port, threads);
+    server.start();
+    System.out.println(
+        Loc.getLocMessage("http-started", server.getPort()));
+  }
+
+  /**
+   * Writes JSON to the writer.
+   */
+  @FunctionalInterface
+  private interface JsonWriter {
+    void write(Writer writer) throws IOException;
+  }
+
+  /**
+   * Key of the cache of responses.
+   */
+  private static final class CacheKey {
+    private final TaskShape shape;
+    private final int n;
+    private final int max;
+    private final long seed;
+
+    private CacheKey(TaskShape shape, int n, int max, long seed) {
+      this.shape = shape;
+      this.n = n;
+      this.max = max;
+      this.seed = seed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      final CacheKey that = (CacheKey) o;
+      return shape == that.shape && n == that.n && max == that.max
+          && seed == that.seed;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(shape.getTemplate(), n, max, seed);
+    }
+  }
+}
+
+// End TaskHttpServer.java
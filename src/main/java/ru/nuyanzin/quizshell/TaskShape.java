@@ -0,0 +1,416 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compiled shape of an arithmetic task, e.g. {@code _ + _ * (_ - _)}.
+ *
+ * <p>A shape is parsed once into a flat postfix program over operand slots,
+ * so that generating, evaluating and rendering a task do not allocate.
+ * Supported operators are {@code + - * /} (division is integer only)
+ * and parentheses. Any letter or {@code _} denotes an operand slot.
+ *
+ * <p>Instances are immutable and could be shared between sessions,
+ * all the mutable state is passed in by the caller (see {@link TaskEngine}).
+ */
+public final class TaskShape {
+  /**
+   * Value returned by evaluation and generation
+   * if a task is not valid for the quiz.
+   */
+  static final long INVALID = Long.MIN_VALUE;
+
+  /**
+   * Program codes. Operator codes could be combined with {@link #LEAF}
+   * which means the right operand of the operator is a single operand slot
+   * taken right at the moment the operator is executed.
+   */
+  private static final byte OPERAND = 0;
+  private static final byte PLUS = 1;
+  private static final byte MINUS = 2;
+  private static final byte TIMES = 3;
+  private static final byte DIVIDE = 4;
+  private static final byte LEFT_PAREN = 5;
+  private static final byte RIGHT_PAREN = 6;
+  private static final byte LEAF = 0x10;
+  private static final byte OPERATOR_MASK = 0x0F;
+
+  /**
+   * Shape for two operands '+' tasks.
+   */
+  public static final TaskShape PLUS_SHAPE = compile("_ + _");
+
+  /**
+   * Shape for two operands '-' tasks.
+   */
+  public static final TaskShape MINUS_SHAPE = compile("_ - _");
+
+  private final String template;
+  /**
+   * Template with {@code _} operands and single spaces around operators,
+   * it is the same for equivalent spellings e.g. {@code _+_}
+   * and {@code a + b}.
+   */
+  private final String normalizedTemplate;
+  /**
+   * Postfix program to generate and evaluate tasks.
+   */
+  private final byte[] program;
+  /**
+   * Infix tokens to render tasks.
+   */
+  private final byte[] infix;
+  private final int operandCount;
+  private final int maxStackDepth;
+
+  private TaskShape(String template, byte[] program, byte[] infix,
+                    int operandCount, int maxStackDepth) {
+    this.template = template;
+    this.program = program;
+    this.infix = infix;
+    this.operandCount = operandCount;
+    this.maxStackDepth = maxStackDepth;
+    final StringBuilder normalized = new StringBuilder();
+    for (byte code : infix) {
+      if (code == OPERAND) {
+        normalized.append('_');
+      } else {
+        appendOperator(code, normalized);
+      }
+    }
+    this.normalizedTemplate = normalized.toString();
+  }
+
+  /**
+   * Parse the template into a shape.
+   *
+   * @param template template of the task e.g. {@code _ + _ * (_ - _)}
+   * @return compiled shape
+   * @throws QuizShellException if the template is not well formed
+   */
+  public static TaskShape compile(final String template) {
+    final int length = template.length();
+    final byte[] infix = new byte[length];
+    final byte[] program = new byte[length];
+    final byte[] operators = new byte[length];
+    int infixSize = 0;
+    int programSize = 0;
+    int operatorsSize = 0;
+    int operandCount = 0;
+    int depth = 0;
+    int maxDepth = 0;
+    // true if an operand or '(' is expected next
+    boolean expectOperand = true;
+    for (int i = 0; i < length; i++) {
+      final char c = template.charAt(i);
+      if (Character.isWhitespace(c)) {
+        continue;
+      }
+      final byte code = toCode(c);
+      if (code == OPERAND) {
+        if (!expectOperand) {
+          throw wrongShape(template);
+        }
+        program[programSize++] = OPERAND;
+        operandCount++;
+        maxDepth = Math.max(maxDepth, ++depth);
+        expectOperand = false;
+      } else if (code == LEFT_PAREN) {
+        if (!expectOperand) {
+          throw wrongShape(template);
+        }
+        operators[operatorsSize++] = LEFT_PAREN;
+      } else if (code == RIGHT_PAREN) {
+        if (expectOperand) {
+          throw wrongShape(template);
+        }
+        while (operatorsSize > 0
+            && operators[operatorsSize - 1] != LEFT_PAREN) {
+          programSize = emit(program, programSize, operators[--operatorsSize]);
+          depth--;
+        }
+        if (operatorsSize == 0) {
+          throw wrongShape(template);
+        }
+        operatorsSize--;
+      } else if (code > 0) {
+        if (expectOperand) {
+          throw wrongShape(template);
+        }
+        while (operatorsSize > 0
+            && operators[operatorsSize - 1] != LEFT_PAREN
+            && precedence(operators[operatorsSize - 1]) >= precedence(code)) {
+          programSize = emit(program, programSize, operators[--operatorsSize]);
+          depth--;
+        }
+        operators[operatorsSize++] = code;
+        expectOperand = true;
+      } else {
+        throw wrongShape(template);
+      }
+      infix[infixSize++] = code;
+    }
+    if (expectOperand) {
+      throw wrongShape(template);
+    }
+    while (operatorsSize > 0) {
+      final byte operator = operators[--operatorsSize];
+      if (operator == LEFT_PAREN) {
+        throw wrongShape(template);
+      }
+      programSize = emit(program, programSize, operator);
+    }
+    return new TaskShape(template,
+        Arrays.copyOf(program, programSize),
+        Arrays.copyOf(infix, infixSize),
+        operandCount, maxDepth);
+  }
+
+  /**
+   * Append the operator to the program. If the right operand
+   * of the operator is a single operand slot then it is folded
+   * into the operator, so the generator could pick it depending on
+   * the value of the left operand.
+   */
+  private static int emit(byte[] program, int programSize, byte operator) {
+    if (program[programSize - 1] == OPERAND) {
+      program[programSize - 1] = (byte) (operator | LEAF);
+      return programSize;
+    }
+    program[programSize] = operator;
+    return programSize + 1;
+  }
+
+  private static byte toCode(char c) {
+    switch (c) {
+    case '+':
+      return PLUS;
+    case '-':
+      return MINUS;
+    case '*':
+      return TIMES;
+    case '/':
+      return DIVIDE;
+    case '(':
+      return LEFT_PAREN;
+    case ')':
+      return RIGHT_PAREN;
+    default:
+      return c == '_' || Character.isLetter(c) ? OPERAND : -1;
+    }
+  }
+
+  private static int precedence(byte operator) {
+    return operator == TIMES || operator == DIVIDE ? 2 : 1;
+  }
+
+  private static QuizShellException wrongShape(String template) {
+    return new QuizShellException(QuizShellException.Category.TASK,
+        "wrong-task-shape", template);
+  }
+
+  public String getTemplate() {
+    return template;
+  }
+
+  /**
+   * @return template of the shape independent of its spelling
+   */
+  public String getNormalizedTemplate() {
+    return normalizedTemplate;
+  }
+
+  public int getOperandCount() {
+    return operandCount;
+  }
+
+  int getMaxStackDepth() {
+    return maxStackDepth;
+  }
+
+  /**
+   * Evaluate the task for the specified operands.
+   *
+   * @param operands operands in order of their appearance in the template
+   * @param stack    scratch stack of at least {@link #getMaxStackDepth()}
+   * @return the result or {@link #INVALID} if there is an overflow
+   *         of int, a division by zero or a division with a remainder
+   */
+  long evaluate(final int[] operands, final long[] stack) {
+    int sp = 0;
+    int operand = 0;
+    for (byte code : program) {
+      if (code == OPERAND) {
+        stack[sp++] = operands[operand++];
+        continue;
+      }
+      final long right;
+      if ((code & LEAF) != 0) {
+        right = operands[operand++];
+      } else {
+        right = stack[--sp];
+      }
+      final long value = apply(code & OPERATOR_MASK, stack[sp - 1], right);
+      if (value == INVALID) {
+        return INVALID;
+      }
+      stack[sp - 1] = value;
+    }
+    return stack[0];
+  }
+
+  /**
+   * Fill the operands with random numbers from {@code [0, maxNumber)}
+   * and evaluate the task. Right operands of '-' and '/' which are single
+   * slots are chosen so that the result is not negative
+   * and the division has no remainder.
+   *
+   * @param random    random to use
+   * @param maxNumber upper bound (exclusive) for operands
+   * @param operands  operands to fill
+   * @param stack     scratch stack of at least {@link #getMaxStackDepth()}
+   * @return the result or {@link #INVALID} if the generated task
+   *         is not valid and should be generated again
+   */
+  long generate(final Random random, final int maxNumber,
+                final int[] operands, final long[] stack) {
+    int sp = 0;
+    int operand = 0;
+    for (byte code : program) {
+      if (code == OPERAND) {
+        final int value = random.nextInt(maxNumber);
+        operands[operand++] = value;
+        stack[sp++] = value;
+        continue;
+      }
+      final int operator = code & OPERATOR_MASK;
+      final long left = stack[(code & LEAF) != 0 ? sp - 1 : sp - 2];
+      final long right;
+      if ((code & LEAF) != 0) {
+        final int value = pickRight(random, maxNumber, operator, left);
+        if (value < 0) {
+          return INVALID;
+        }
+        operands[operand++] = value;
+        right = value;
+      } else {
+        right = stack[--sp];
+      }
+      final long value = apply(operator, left, right);
+      if (value == INVALID) {
+        return INVALID;
+      }
+      stack[sp - 1] = value;
+    }
+    return stack[0] < 0 ? INVALID : stack[0];
+  }
+
+  /**
+   * Pick right operand depending on the left one.
+   *
+   * @return the operand or -1 if there is no suitable one
+   */
+  private static int pickRight(Random random, int maxNumber,
+                               int operator, long left) {
+    if (operator == MINUS) {
+      return left < 0 ? -1
+          : random.nextInt((int) Math.min(left, maxNumber - 1) + 1);
+    }
+    if (operator != DIVIDE) {
+      return random.nextInt(maxNumber);
+    }
+    if (maxNumber < 2) {
+      return -1;
+    }
+    if (left == 0) {
+      return random.nextInt(maxNumber - 1) + 1;
+    }
+    // search for a divisor from a random start, 1 is always a divisor
+    final int limit = (int) Math.min(Math.abs(left), maxNumber - 1);
+    final int start = random.nextInt(limit);
+    for (int i = 0; i < limit; i++) {
+      final int divisor = (start + i) % limit + 1;
+      if (left % divisor == 0) {
+        return divisor;
+      }
+    }
+    return 1;
+  }
+
+  private static long apply(int operator, long left, long right) {
+    final long value;
+    switch (operator) {
+    case PLUS:
+      value = left + right;
+      break;
+    case MINUS:
+      value = left - right;
+      break;
+    case TIMES:
+      value = left * right;
+      break;
+    case DIVIDE:
+      if (right == 0 || left % right != 0) {
+        return INVALID;
+      }
+      value = left / right;
+      break;
+    default:
+      throw new IllegalStateException(String.valueOf(operator));
+    }
+    // operands and intermediate values are ints
+    // so there is no overflow of long here
+    return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE
+        ? INVALID : value;
+  }
+
+  /**
+   * Render the task to the buffer.
+   *
+   * @param operands operands in order of their appearance in the template
+   * @param out      buffer to append to
+   */
+  void render(final int[] operands, final StringBuilder out) {
+    int operand = 0;
+    for (byte code : infix) {
+      if (code == OPERAND) {
+        out.append(operands[operand++]);
+      } else {
+        appendOperator(code, out);
+      }
+    }
+  }
+
+  private static void appendOperator(byte code, StringBuilder out) {
+    switch (code) {
+    case PLUS:
+      out.append(" + ");
+      break;
+    case MINUS:
+      out.append(" - ");
+      break;
+    case TIMES:
+      out.append(" * ");
+      break;
+    case DIVIDE:
+      out.append(" / ");
+      break;
+    case LEFT_PAREN:
+      out.append('(');
+      break;
+    case RIGHT_PAREN:
+      out.append(')');
+      break;
+    default:
+      throw new IllegalStateException(String.valueOf(code));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+}
+
+// End TaskShape.java
@@ -0,0 +1,81 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link BoundedLineReader}.
+ */
+class BoundedLineReaderTest {
+  @Test
+  void linesEndWithAnyTerminator() throws IOException {
+    final BoundedLineReader reader = reader("a\nb\r\nc\rd", 10);
+    assertEquals("a", reader.readLine());
+    assertEquals("b", reader.readLine());
+    assertEquals("c", reader.readLine());
+    assertEquals("d", reader.readLine());
+    assertNull(reader.readLine());
+  }
+
+  @Test
+  void longLinesAreTruncated() throws IOException {
+    final BoundedLineReader reader = reader("abcdef\nабв\n", 3);
+    assertEquals("abc", reader.readLine());
+    assertTrue(reader.isTruncated());
+    assertEquals("абв", reader.readLine());
+    assertFalse(reader.isTruncated());
+  }
+
+  /**
+   * The end of the input is read once, a terminal user presses Ctrl-D
+   * only once to end the session.
+   */
+  @ParameterizedTest
+  @ValueSource(strings = {"", "a", "a\n", "a\r", "абв"})
+  void endOfInputIsReadOnce(String input) throws IOException {
+    final CountingInput in = new CountingInput(input);
+    final BoundedLineReader reader = new BoundedLineReader(in, 10);
+    while (reader.readLine() != null) {
+      assertTrue(in.reads <= 1);
+    }
+    assertEquals(1, in.reads);
+    assertNull(reader.readLineChars());
+    assertEquals(1, in.reads);
+  }
+
+  private static BoundedLineReader reader(String input, int maxLineLength) {
+    return new BoundedLineReader(new CountingInput(input), maxLineLength);
+  }
+
+  /**
+   * Input in memory counting reads at the end of it.
+   */
+  private static final class CountingInput extends ByteArrayInputStream {
+    private int reads;
+
+    CountingInput(String input) {
+      super(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) {
+      final int read = super.read(b, off, len);
+      if (read < 0) {
+        reads++;
+      }
+      return read;
+    }
+  }
+}
+
+// End BoundedLineReaderTest.java
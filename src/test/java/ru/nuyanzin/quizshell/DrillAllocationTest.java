@@ -0,0 +1,115 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Allocation benchmark of the drill loop: bytes allocated per task
+ * in the steady state, i.e. the difference between a long and a short
+ * drill divided by the difference of their tasks, so the start
+ * of the session and of the drill is not counted.
+ *
+ * <p>Drills are replayed from memory to a discarding output with every
+ * tenth task answered wrong first. Allocated bytes are measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * of the current thread, the test is skipped on JVMs without it.
+ */
+class DrillAllocationTest {
+  private static final long SEED = 42;
+  private static final int MAX_NUMBER = 1000;
+  private static final int SHORT_DRILL = 10_000;
+  private static final int LONG_DRILL = 110_000;
+  private static final int WARMUPS = 3;
+
+  /**
+   * Bytes per task the steady state should not exceed, the drill loop
+   * allocated about 1900 bytes per task before it reused its buffers.
+   */
+  private static final double MAX_BYTES_PER_TASK = 64;
+
+  @Test
+  void drillLoopDoesNotAllocate() {
+    assumeTrue(ManagementFactory.getThreadMXBean()
+        instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    for (int i = 0; i < WARMUPS; i++) {
+      allocatedBytes(threads, SHORT_DRILL);
+      allocatedBytes(threads, LONG_DRILL);
+    }
+    final long shortDrill = allocatedBytes(threads, SHORT_DRILL);
+    final long longDrill = allocatedBytes(threads, LONG_DRILL);
+    final double bytesPerTask =
+        (double) (longDrill - shortDrill) / (LONG_DRILL - SHORT_DRILL);
+    assertTrue(bytesPerTask < MAX_BYTES_PER_TASK,
+        bytesPerTask + " bytes per task");
+  }
+
+  /**
+   * Bytes allocated by the current thread to run a session
+   * with a drill of the tasks.
+   */
+  private static long allocatedBytes(com.sun.management.ThreadMXBean threads,
+      int tasks) {
+    final byte[] input = script(tasks);
+    final CohortStats cohort = new CohortStats();
+    final QuizShell shell = QuizShell.builder()
+        .input(new ByteArrayInputStream(input))
+        .output(new NullOutputStream())
+        .error(new NullOutputStream())
+        .random(new Random(SEED))
+        .cohort(cohort)
+        .build();
+    final long id = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(id);
+    shell.run();
+    final long allocated = threads.getThreadAllocatedBytes(id) - before;
+    assertEquals(tasks, cohort.snapshot()
+        .getCorrect(TaskShape.PLUS_SHAPE.getNormalizedTemplate()));
+    return allocated;
+  }
+
+  /**
+   * Script of a drill with the answers to the tasks the session asks,
+   * the session takes the seed of its drill from its random.
+   */
+  private static byte[] script(int tasks) {
+    final TaskEngine engine = new TaskEngine(TaskShape.PLUS_SHAPE,
+        new Random(new Random(SEED).nextLong()), MAX_NUMBER);
+    final StringBuilder script = new StringBuilder()
+        .append("plus ").append(tasks).append(' ').append(MAX_NUMBER)
+        .append('\n');
+    for (int i = 0; i < tasks; i++) {
+      engine.next();
+      if (i % 10 == 0) {
+        script.append(engine.getResult() + 1).append('\n');
+      }
+      script.append(engine.getResult()).append('\n');
+    }
+    return script.append("q\n").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Output stream discarding everything written to it.
+   */
+  private static final class NullOutputStream extends OutputStream {
+    @Override public void write(int b) {
+    }
+
+    @Override public void write(byte[] b, int off, int len) {
+    }
+  }
+}
+
+// End DrillAllocationTest.java
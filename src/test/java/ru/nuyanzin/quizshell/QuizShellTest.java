@@ -0,0 +1,131 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of sessions of {@link QuizShell} run on an input in memory.
+ */
+class QuizShellTest {
+  private Path dir;
+
+  @BeforeEach
+  void createDir() throws IOException {
+    dir = Files.createTempDirectory("quizshell");
+  }
+
+  @AfterEach
+  void deleteDir() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files
+          .sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void endOfScriptAbandonsItsDrill() throws IOException {
+    final Path script = dir.resolve("drill.txt");
+    write(script, "plus 3 10\n");
+    final String transcript = run("run " + script + "\nq\n");
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("drill-abandoned", 0, 3)), transcript);
+    // the next line of the session is a command, not an answer
+    assertFalse(transcript.contains(
+        Loc.root().getMessage("answer-should-be-number", "q")), transcript);
+    assertFalse(transcript.contains(
+        Loc.root().getMessage("eof-detected")), transcript);
+  }
+
+  @Test
+  void scriptsAreResolvedAgainstDirectoryOfScript() throws IOException {
+    Files.createDirectories(dir.resolve("sub"));
+    write(dir.resolve("outer.txt"), "run sub/inner.txt\n");
+    write(dir.resolve("sub").resolve("inner.txt"), "set maxNumber 7\n");
+    final String transcript =
+        run("run " + dir.resolve("outer.txt") + "\nset maxNumber\nq\n");
+    assertTrue(transcript.contains("maxnumber 7"), transcript);
+  }
+
+  @Test
+  void drillWithoutOptionsIsNotAnInputError() {
+    final String transcript =
+        run("set numberOfTasks 0\nplus\nminus\nstats\nq\n");
+    assertFalse(transcript.contains(
+        Loc.root().getMessage("number-of-tasks-should-be-number", "")),
+        transcript);
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("stats-errors", 0, 0, 0, 0, 0, 0)), transcript);
+  }
+
+  @Test
+  void wrongOptionIsReported() {
+    final String transcript =
+        run("set numberOfTasks 0\nplus x\nstats\nq\n");
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("number-of-tasks-should-be-number", "x")),
+        transcript);
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("stats-errors", 0, 0, 1, 0, 0, 0)), transcript);
+  }
+
+  @Test
+  void nonNumberIsNotAnAnswer() {
+    // the task of the random of the session is 0 + 0
+    final String transcript = run("plus 1 1\nabc\n0\nstats\nq\n");
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("answer-should-be-number", "abc")), transcript);
+    assertFalse(transcript.contains(
+        Loc.root().getMessage("not-correct-answer")), transcript);
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("stats-session", 1, 1, 1)), transcript);
+    assertTrue(transcript.contains(Loc.root().getMessage("stats-operation",
+        "_ + _", 1, 1, 1, 1d)), transcript);
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("stats-errors", 0, 0, 1, 0, 0, 0)), transcript);
+  }
+
+  /**
+   * Run a session on the input.
+   *
+   * @return the output and errors of the session
+   */
+  static String run(String input) {
+    final ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+    QuizShell.builder()
+        .input(new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8)))
+        .output(transcript)
+        .error(transcript)
+        .echo(true)
+        .random(new Random(1))
+        .cohort(new CohortStats())
+        .classrooms(new Classrooms())
+        .build()
+        .run();
+    return StandardCharsets.UTF_8.decode(
+        ByteBuffer.wrap(transcript.toByteArray())).toString();
+  }
+
+  private static void write(Path file, String text) throws IOException {
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+}
+
+// End QuizShellTest.java
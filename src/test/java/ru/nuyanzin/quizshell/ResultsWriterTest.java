@@ -0,0 +1,218 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of results files: batches written by {@link ResultsWriter}s
+ * are read back, torn and foreign files are repaired when opened.
+ */
+class ResultsWriterTest {
+  private static final TaskShape EXPR = TaskShape.compile("_ + _ * (_ - _)");
+
+  private Path dir;
+
+  @BeforeEach
+  void createDir() throws IOException {
+    dir = Files.createTempDirectory("quizshell");
+  }
+
+  @AfterEach
+  void deleteDir() throws IOException {
+    ResultsWriter.closeAll();
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(dir);
+  }
+
+  @Test
+  void columnarBlocksAreReadBack() throws IOException {
+    final ResultsBatch first = batch(0, 100);
+    final ResultsBatch second = batch(100, 3);
+    final byte[] bytes = encode(first, second);
+    final DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(bytes, 8, bytes.length));
+    assertBatchEquals(first, ColumnarResultsWriter.readBlock(in));
+    assertBatchEquals(second, ColumnarResultsWriter.readBlock(in));
+    assertNull(ColumnarResultsWriter.readBlock(in));
+  }
+
+  @Test
+  void tornColumnarBlockIsNotRead() throws IOException {
+    final byte[] bytes = encode(batch(0, 10), batch(10, 10));
+    for (int cut = 1; cut < 30; cut++) {
+      final DataInputStream in = new DataInputStream(
+          new ByteArrayInputStream(bytes, 8, bytes.length - 8 - cut));
+      assertBatchEquals(batch(0, 10), ColumnarResultsWriter.readBlock(in));
+      assertNull(ColumnarResultsWriter.readBlock(in));
+    }
+  }
+
+  @Test
+  void corruptedColumnarBlockIsNotRead() throws IOException {
+    final byte[] bytes = encode(batch(0, 10));
+    bytes[bytes.length - 2] ^= 1;
+    final DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(bytes, 8, bytes.length));
+    assertNull(ColumnarResultsWriter.readBlock(in));
+  }
+
+  @Test
+  void tornColumnarFileIsTruncatedWhenOpened() throws IOException {
+    final Path file = dir.resolve("results.qsr");
+    final byte[] bytes = encode(batch(0, 10), batch(10, 10));
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 5));
+    write(file, batch(20, 10));
+    final List<ResultsBatch> batches = readAll(file);
+    assertEquals(2, batches.size());
+    assertBatchEquals(batch(0, 10), batches.get(0));
+    assertBatchEquals(batch(20, 10), batches.get(1));
+  }
+
+  @Test
+  void foreignFileIsMovedWhenOpened() throws IOException {
+    final Path file = dir.resolve("results.qsr");
+    final byte[] foreign = encode(batch(0, 10));
+    // another version of the format
+    foreign[7] = 1;
+    Files.write(file, foreign);
+    write(file, batch(10, 5));
+    assertArrayEquals(foreign,
+        Files.readAllBytes(dir.resolve("results.qsr.1")));
+    final List<ResultsBatch> batches = readAll(file);
+    assertEquals(1, batches.size());
+    assertBatchEquals(batch(10, 5), batches.get(0));
+  }
+
+  @Test
+  void csvLinesAreAppended() throws IOException {
+    final Path file = dir.resolve("results.csv");
+    write(file, batch(0, 2));
+    write(file, batch(2, 1));
+    assertEquals(CsvResultsWriter.HEADER
+            + "0,_ + _ * (_ - _),0 1 2 0,-1,true\n"
+            + "1000,_ - _,2 1,0,false\n"
+            + "2000,_ + _ * (_ - _),2 3 4 2,1,true\n",
+        read(file));
+  }
+
+  @Test
+  void tornCsvLineIsTruncatedWhenOpened() throws IOException {
+    final Path file = dir.resolve("results.csv");
+    Files.write(file, (CsvResultsWriter.HEADER + "0,_ + _,1 2,3,true\n"
+        + "1,_ + _,1").getBytes(StandardCharsets.UTF_8));
+    write(file, batch(5, 1));
+    assertEquals(CsvResultsWriter.HEADER + "0,_ + _,1 2,3,true\n"
+            + "5000,_ - _,6 5,4,true\n",
+        read(file));
+  }
+
+  @Test
+  void foreignCsvFileIsMovedWhenOpened() throws IOException {
+    final Path file = dir.resolve("results.csv");
+    Files.write(file, "a,b\n".getBytes(StandardCharsets.UTF_8));
+    write(file, batch(0, 1));
+    assertEquals("a,b\n", read(dir.resolve("results.csv.1")));
+    assertTrue(read(file).startsWith(CsvResultsWriter.HEADER));
+  }
+
+  /**
+   * Batch of rows {@code [from, from + size)}, every third answer is wrong.
+   */
+  private static ResultsBatch batch(int from, int size) {
+    final ResultsBatch batch = new ResultsBatch(size);
+    for (int row = from; row < from + size; row++) {
+      batch.add(row * 1000L, row % 2 == 0 ? EXPR : TaskShape.MINUS_SHAPE,
+          row % 2 == 0
+              ? new int[] {row, row + 1, row + 2, row}
+              : new int[] {row + 1, row},
+          row - 1, row % 3 != 1);
+    }
+    return batch;
+  }
+
+  private static byte[] encode(ResultsBatch... batches) throws IOException {
+    final ColumnarResultsWriter writer = new ColumnarResultsWriter(null);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeHeader(out);
+    for (ResultsBatch batch : batches) {
+      writer.encode(batch, out);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Write the batch with the writer of the file and wait for it.
+   */
+  private static void write(Path file, ResultsBatch batch) {
+    final ResultsWriter writer = ResultsWriter.open(file.toString());
+    assertSame(writer, ResultsWriter.open(file.toString()));
+    writer.write(batch);
+    ResultsWriter.closeAll();
+  }
+
+  private static String read(Path file) throws IOException {
+    return StandardCharsets.UTF_8.decode(
+        ByteBuffer.wrap(Files.readAllBytes(file))).toString();
+  }
+
+  private static List<ResultsBatch> readAll(Path file) throws IOException {
+    final List<ResultsBatch> batches = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(Files.readAllBytes(file)))) {
+      assertEquals(0x51535243, in.readInt());
+      assertEquals(2, in.readInt());
+      ResultsBatch batch;
+      while ((batch = ColumnarResultsWriter.readBlock(in)) != null) {
+        batches.add(batch);
+      }
+      assertFalse(in.available() > 0);
+    }
+    return batches;
+  }
+
+  private static void assertBatchEquals(ResultsBatch expected,
+      ResultsBatch actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int row = 0; row < expected.size(); row++) {
+      assertEquals(expected.getTimestamp(row), actual.getTimestamp(row));
+      assertEquals(expected.getShape(row).getTemplate(),
+          actual.getShape(row).getTemplate());
+      assertEquals(expected.getAnswer(row), actual.getAnswer(row));
+      assertEquals(expected.isCorrect(row), actual.isCorrect(row));
+      assertEquals(expected.getOperandsCount(row),
+          actual.getOperandsCount(row));
+      for (int i = 0; i < expected.getOperandsCount(row); i++) {
+        assertEquals(
+            expected.getOperand(expected.getOperandsOffset(row) + i),
+            actual.getOperand(actual.getOperandsOffset(row) + i));
+      }
+    }
+  }
+}
+
+// End ResultsWriterTest.java
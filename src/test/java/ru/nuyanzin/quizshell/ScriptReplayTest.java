@@ -0,0 +1,118 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link ScriptReplay}: transcripts of scripts replayed
+ * in parallel.
+ */
+class ScriptReplayTest {
+  private Path dir;
+  private Path scripts;
+  private Path out;
+
+  @BeforeEach
+  void createDirs() throws IOException {
+    dir = Files.createTempDirectory("quizshell");
+    scripts = Files.createDirectory(dir.resolve("scripts"));
+    out = dir.resolve("out");
+  }
+
+  @AfterEach
+  void deleteDirs() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files
+          .sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Test
+  void errorsFollowOutputPrintedBeforeThem() throws IOException {
+    write("errors.txt", "set maxNumber abc\nset numberOfTasks 3\n");
+    assertTrue(replay(null));
+    final String transcript = read(out.resolve("errors.txt.out"));
+    final int echo = transcript.indexOf("set maxNumber abc");
+    final int error = transcript.indexOf(
+        Loc.root().getMessage("error-setting", "maxnumber", "")
+            .substring(0, 20));
+    assertTrue(echo >= 0 && error > echo, transcript);
+    assertTrue(transcript.indexOf("set numberOfTasks 3") > error,
+        transcript);
+  }
+
+  @Test
+  void transcriptsAreSameOnEveryRun() throws IOException {
+    for (int i = 0; i < 8; i++) {
+      write("drill" + i + ".txt", "plus 3 10\n1\n2\n3\nstats\n");
+    }
+    assertTrue(replay(null));
+    final Path expected = Files.move(out, dir.resolve("expected"));
+    assertTrue(replay(expected));
+    for (int i = 0; i < 8; i++) {
+      final String name = "drill" + i + ".txt.out";
+      assertEquals(read(expected.resolve(name)), read(out.resolve(name)));
+    }
+    write("drill0.txt", "plus 3 10\n1\n2\n4\n");
+    assertFalse(replay(expected));
+  }
+
+  @Test
+  void scriptsDoNotShareClasses() throws IOException {
+    write("teacher.txt", "broadcast 5a 3 10\n");
+    write("learner.txt", "join 5a\n");
+    for (int i = 0; i < 20; i++) {
+      assertTrue(replay(null));
+      assertFalse(read(out.resolve("learner.txt.out")).contains(
+          Loc.root().getMessage("classroom-tasks", "5a")));
+    }
+  }
+
+  @Test
+  void globsMatchFileNames() throws IOException {
+    write("a.txt", "q\n");
+    write("b.txt", "q\n");
+    write("c.md", "q\n");
+    assertEquals(
+        Arrays.asList(scripts.resolve("a.txt").toAbsolutePath(),
+            scripts.resolve("b.txt").toAbsolutePath()),
+        ScriptReplay.findScripts(scripts + "/*.txt"));
+    assertEquals(3, ScriptReplay.findScripts(scripts.toString()).size());
+  }
+
+  private boolean replay(Path expected) throws IOException {
+    try {
+      return new ScriptReplay(ScriptReplay.findScripts(scripts.toString()),
+          out, expected, 4, 0).run();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void write(String name, String text) throws IOException {
+    Files.write(scripts.resolve(name), text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(Path file) throws IOException {
+    return StandardCharsets.UTF_8.decode(
+        ByteBuffer.wrap(Files.readAllBytes(file))).toString();
+  }
+}
+
+// End ScriptReplayTest.java
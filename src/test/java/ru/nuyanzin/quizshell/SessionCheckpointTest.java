@@ -0,0 +1,206 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link SessionCheckpoint}: snapshots and records appended
+ * to them are read back, a torn last record is ignored.
+ */
+class SessionCheckpointTest {
+  private Path dir;
+  private Path file;
+
+  @BeforeEach
+  void createDir() throws IOException {
+    dir = Files.createTempDirectory("quizshell");
+    file = dir.resolve("session.qscp");
+  }
+
+  @AfterEach
+  void deleteDir() throws IOException, InterruptedException {
+    SessionCheckpoint.awaitWritten();
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) files
+          .sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  void recordsAreAppliedToSnapshot() throws Exception {
+    final SessionCheckpoint checkpoint = write();
+    checkpoint.answered(true);
+    SessionCheckpoint.awaitWritten();
+    final SessionCheckpoint.State state = checkpoint.read();
+    assertEquals("7", state.getOptions().get("quizshell.maxnumber"));
+    assertArrayEquals(new long[] {6, 8, 6}, state.getStats());
+    final SessionCheckpoint.Drill drill = state.getDrill();
+    assertEquals("_ - _", drill.getTemplate());
+    assertEquals(20, drill.getMaxNumber());
+    assertEquals(5, drill.getTotal());
+    assertEquals(42, drill.getSeed());
+    assertEquals(2, drill.getNext());
+  }
+
+  @Test
+  void endedDrillIsNotResumed() throws Exception {
+    final SessionCheckpoint checkpoint = write();
+    checkpoint.drillEnded();
+    SessionCheckpoint.awaitWritten();
+    final SessionCheckpoint.State state = checkpoint.read();
+    assertArrayEquals(new long[] {5, 7, 5}, state.getStats());
+    assertNull(state.getDrill());
+  }
+
+  @Test
+  void snapshotReplacesRecords() throws Exception {
+    final SessionCheckpoint checkpoint = write();
+    checkpoint.snapshot(new Properties(), new long[] {1, 2, 3}, null);
+    SessionCheckpoint.awaitWritten();
+    final SessionCheckpoint.State state = checkpoint.read();
+    assertEquals(0, state.getOptions().size());
+    assertArrayEquals(new long[] {1, 2, 3}, state.getStats());
+    assertNull(state.getDrill());
+  }
+
+  @Test
+  void tornLastRecordIsIgnored() throws Exception {
+    final SessionCheckpoint checkpoint = write();
+    checkpoint.answered(true);
+    SessionCheckpoint.awaitWritten();
+    final byte[] bytes = Files.readAllBytes(file);
+    // the last answer has its type but not its value
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+    final SessionCheckpoint.State state = checkpoint.read();
+    assertArrayEquals(new long[] {5, 7, 5}, state.getStats());
+    assertEquals(1, state.getDrill().getNext());
+  }
+
+  @Test
+  void unknownRecordIsRejected() throws Exception {
+    final SessionCheckpoint checkpoint = write();
+    SessionCheckpoint.awaitWritten();
+    Files.write(file, new byte[] {99}, StandardOpenOption.APPEND);
+    final IOException e = assertThrows(IOException.class, checkpoint::read);
+    assertEquals(Loc.getLocMessage("checkpoint-wrong-format",
+        file.toAbsolutePath().normalize()), e.getMessage());
+  }
+
+  @Test
+  void missingCheckpointIsNotRead() throws IOException {
+    assertNull(new SessionCheckpoint(file.toString()).read());
+  }
+
+  /**
+   * The process stops while a resumed drill is answered, the drill
+   * is resumed again on the next start.
+   */
+  @Test
+  void crashDuringResumedDrillKeepsDrill() throws Exception {
+    // the input ends in the drill, the drill is kept
+    session("plus 3 10\n-1\n", null);
+    assertNotNull(new SessionCheckpoint(file.toString()).read().getDrill());
+    // the image of the checkpoint when the process stops after an answer
+    final Path crash = dir.resolve("crash.qscp");
+    final String transcript = session("-1\n", crash);
+    assertTrue(transcript.contains(
+        Loc.root().getMessage("checkpoint-resumed", 1, 3, "_ + _")),
+        transcript);
+    final SessionCheckpoint.State state =
+        new SessionCheckpoint(crash.toString()).read();
+    assertArrayEquals(new long[] {0, 2, 0}, state.getStats());
+    assertEquals(0, state.getDrill().getNext());
+    assertEquals(3, state.getDrill().getTotal());
+  }
+
+  /**
+   * Checkpoint with a snapshot, the drill of it has an answered task
+   * and then a wrong answer.
+   */
+  private SessionCheckpoint write() {
+    final SessionCheckpoint checkpoint = new SessionCheckpoint(file.toString());
+    final Properties options = new Properties();
+    options.setProperty("quizshell.maxnumber", "7");
+    options.setProperty("quizshell.learner", "Анна");
+    checkpoint.snapshot(options, new long[] {4, 5, 4}, null);
+    checkpoint.drillStarted(new SessionCheckpoint.Drill("_ - _", 20, 5, 42));
+    checkpoint.answered(false);
+    checkpoint.answered(true);
+    return checkpoint;
+  }
+
+  /**
+   * Run a session with the checkpoint.
+   *
+   * @param input input of the session
+   * @param crash file to copy the checkpoint to at the end of the input
+   *              or null
+   * @return the output and errors of the session
+   */
+  private String session(String input, Path crash)
+      throws InterruptedException {
+    final InputStream in =
+        new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)) {
+          @Override
+          public synchronized int read(byte[] b, int off, int len) {
+            final int n = super.read(b, off, len);
+            if (n < 0 && crash != null && !Files.exists(crash)) {
+              copyCheckpoint(crash);
+            }
+            return n;
+          }
+        };
+    final ByteArrayOutputStream transcript = new ByteArrayOutputStream();
+    QuizShell.builder()
+        .input(in)
+        .output(transcript)
+        .error(transcript)
+        .echo(true)
+        .random(new Random(1))
+        .cohort(new CohortStats())
+        .classrooms(new Classrooms())
+        .checkpoint(file.toString())
+        .build()
+        .run();
+    SessionCheckpoint.awaitWritten();
+    return StandardCharsets.UTF_8.decode(
+        ByteBuffer.wrap(transcript.toByteArray())).toString();
+  }
+
+  private void copyCheckpoint(Path crash) {
+    try {
+      SessionCheckpoint.awaitWritten();
+      Files.copy(file, crash, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
+
+// End SessionCheckpointTest.java
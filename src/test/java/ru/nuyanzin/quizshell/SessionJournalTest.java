@@ -0,0 +1,239 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link SessionJournal}: records are printed back from
+ * the files of the journal, a torn last record and records of unknown
+ * types are skipped.
+ */
+class SessionJournalTest {
+  private static final Instant TIME = Instant.ofEpochSecond(1_000_000);
+  private static final Clock CLOCK = Clock.fixed(TIME, ZoneOffset.UTC);
+
+  private Path dir;
+  private Path file;
+
+  @BeforeEach
+  void createDir() throws IOException {
+    dir = Files.createTempDirectory("quizshell");
+    file = dir.resolve("journal.qsj");
+  }
+
+  @AfterEach
+  void deleteDir() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) files
+          .sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Test
+  void recordsAreReadBack() throws IOException {
+    final SessionJournal journal =
+        new SessionJournal(file, SessionJournal.MAX_FILE_SIZE);
+    final SessionJournal.Recorder recorder = journal.recorder(CLOCK);
+    recorder.started("Анна");
+    recorder.line("plus 1 5");
+    recorder.command("plus");
+    final byte[] task = "1) 2 + 3 = ".getBytes(StandardCharsets.UTF_8);
+    recorder.task(task, 0, task.length);
+    recorder.answer("4", false);
+    recorder.answer("5", true);
+    recorder.commit();
+    journal.close();
+    assertEquals(
+        line("journal-session", 1, "Анна")
+            + line("journal-line", 1, "plus 1 5")
+            + line("journal-command", 1, "plus")
+            + line("journal-task", 1, "1) 2 + 3 = ")
+            + line("journal-wrong-answer", 1, "4")
+            + line("journal-correct-answer", 1, "5"),
+        print());
+  }
+
+  @Test
+  void charactersAreEncodedToUtf8() throws IOException {
+    final String[] lines = {
+        "é€", "a😀b", "\uD83Dx", "x\uDE00", "\uDE00\uD83D", "\uD83D"};
+    final String[] printed = {
+        "é€", "a😀b", "?x", "x?", "??", "?"};
+    final SessionJournal journal =
+        new SessionJournal(file, SessionJournal.MAX_FILE_SIZE);
+    final SessionJournal.Recorder recorder = journal.recorder(CLOCK);
+    recorder.started("");
+    for (String line : lines) {
+      recorder.line(line);
+    }
+    recorder.commit();
+    journal.close();
+    final StringBuilder expected =
+        new StringBuilder(line("journal-session", 1, ""));
+    for (String line : printed) {
+      expected.append(line("journal-line", 1, line));
+    }
+    assertEquals(expected.toString(), print());
+  }
+
+  @Test
+  void filesAreRotated() throws Exception {
+    final SessionJournal journal = new SessionJournal(file, 1);
+    final SessionJournal.Recorder recorder = journal.recorder(CLOCK);
+    recorder.started("a");
+    recorder.commit();
+    awaitWritten();
+    // the file is bigger than the maximum, the next records start
+    // the next file
+    recorder.line("1");
+    recorder.commit();
+    journal.close();
+    // the file of the previous process is renamed on the start
+    final SessionJournal next =
+        new SessionJournal(file, SessionJournal.MAX_FILE_SIZE);
+    final SessionJournal.Recorder nextRecorder = next.recorder(CLOCK);
+    nextRecorder.started("b");
+    nextRecorder.commit();
+    next.close();
+    assertEquals(
+        Arrays.asList(dir.resolve("journal.qsj.1"),
+            dir.resolve("journal.qsj.2"), file),
+        SessionJournal.files(file));
+    assertEquals(line("journal-session", 1, "a")
+            + line("journal-line", 1, "1")
+            + line("journal-session", 2, "b"),
+        print());
+  }
+
+  @Test
+  void sessionsOfRunsAreNumberedApart() throws IOException {
+    // both processes numbered their session 7
+    Files.write(dir.resolve("journal.qsj.1"),
+        concat(header(1), record(7, "a")));
+    Files.write(file, concat(header(2), record(7, "b"), record(8, "c"),
+        record(7, "d")));
+    assertEquals(line("journal-line", 1, "a")
+            + line("journal-line", 2, "b")
+            + line("journal-line", 3, "c")
+            + line("journal-line", 2, "d"),
+        print());
+  }
+
+  @Test
+  void tornLastRecordIsSkipped() throws IOException {
+    final byte[] bytes =
+        concat(header(1), record(7, "a"), record(7, "bc"));
+    for (int cut = 1; cut < record(7, "bc").length; cut++) {
+      Files.write(file, Arrays.copyOf(bytes, bytes.length - cut));
+      assertEquals(line("journal-line", 1, "a"), print());
+    }
+  }
+
+  @Test
+  void unknownRecordsAreSkipped() throws IOException {
+    final byte[] unknown = record(7, "x");
+    unknown[4] = 99;
+    Files.write(file, concat(header(1), record(7, "a"), unknown,
+        record(7, "b")));
+    assertEquals(line("journal-line", 1, "a") + line("journal-line", 1, "b"),
+        print());
+  }
+
+  @Test
+  void recordsAfterCloseAreRejected() throws IOException {
+    final SessionJournal journal =
+        new SessionJournal(file, SessionJournal.MAX_FILE_SIZE);
+    final SessionJournal.Recorder recorder = journal.recorder(CLOCK);
+    recorder.started("a");
+    recorder.commit();
+    journal.close();
+    final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+    final PrintStream err = System.err;
+    System.setErr(
+        new PrintStream(errors, true, StandardCharsets.UTF_8.name()));
+    try {
+      recorder.line("1");
+      recorder.commit();
+      recorder.line("2");
+      recorder.commit();
+    } finally {
+      System.setErr(err);
+    }
+    final String message = errors.toString(StandardCharsets.UTF_8.name());
+    final String closed = Loc.getLocMessage("journal-closed", file, 0);
+    assertTrue(message.startsWith(closed.substring(0, closed.indexOf('#'))),
+        message);
+    // reported once per session
+    assertEquals(1, message.split("\n").length, message);
+    assertEquals(line("journal-session", 1, "a"), print());
+  }
+
+  /**
+   * Wait until the records handed over are in the file.
+   */
+  private void awaitWritten() throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!Files.exists(file) || Files.size(file) <= 16) {
+      assertTrue(System.nanoTime() < deadline);
+      Thread.sleep(1);
+    }
+  }
+
+  private String print() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    SessionJournal.print(SessionJournal.files(file),
+        new PrintStream(out, true, StandardCharsets.UTF_8.name()));
+    return out.toString(StandardCharsets.UTF_8.name());
+  }
+
+  private static String line(String key, int session, String text) {
+    return Loc.getLocMessage(key, TIME, session, text)
+        + System.lineSeparator();
+  }
+
+  private static byte[] header(long run) {
+    return ByteBuffer.allocate(16).putInt(0x51534A52).putInt(2).putLong(run)
+        .array();
+  }
+
+  /**
+   * Line record of the session.
+   */
+  private static byte[] record(int session, String line) {
+    final byte[] payload = line.getBytes(StandardCharsets.UTF_8);
+    return ByteBuffer.allocate(4 + 13 + payload.length)
+        .putInt(13 + payload.length).put((byte) 2).putInt(session)
+        .putLong(TIME.toEpochMilli()).put(payload).array();
+  }
+
+  private static byte[] concat(byte[]... arrays) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      out.write(array, 0, array.length);
+    }
+    return out.toByteArray();
+  }
+}
+
+// End SessionJournalTest.java
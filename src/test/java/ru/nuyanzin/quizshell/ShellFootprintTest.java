@@ -0,0 +1,100 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Heap footprint of embedded shells: bytes allocated to build an idle
+ * shell and to run a session, measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * of the current thread. The allocated bytes are an upper bound
+ * of the heap the shell keeps. The test is skipped on JVMs without it.
+ */
+class ShellFootprintTest {
+  private static final int SHELLS = 10_000;
+  private static final int WARMUPS = 3;
+
+  /**
+   * Bytes to build a shell should not exceed, it is about 40 KB
+   * on JDK 17, mostly the buffers of the output stream.
+   */
+  private static final long MAX_BYTES_PER_SHELL = 48 << 10;
+
+  /**
+   * Bytes to run a session should not exceed, it is about 14 KB
+   * on JDK 17, mostly the buffers of the input.
+   */
+  private static final long MAX_BYTES_PER_SESSION = 20 << 10;
+
+  private com.sun.management.ThreadMXBean threads;
+
+  @BeforeEach
+  void enableAllocatedMemory() {
+    assumeTrue(ManagementFactory.getThreadMXBean()
+        instanceof com.sun.management.ThreadMXBean);
+    threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @Test
+  void idleShellsAreSmall() {
+    final List<QuizShell> shells = new ArrayList<>(SHELLS);
+    long bytesPerShell = 0;
+    for (int i = 0; i <= WARMUPS; i++) {
+      shells.clear();
+      final long before = allocatedBytes();
+      for (int j = 0; j < SHELLS; j++) {
+        shells.add(builder("").build());
+      }
+      bytesPerShell = (allocatedBytes() - before) / SHELLS;
+    }
+    assertEquals(SHELLS, shells.size());
+    assertTrue(bytesPerShell < MAX_BYTES_PER_SHELL,
+        bytesPerShell + " bytes per shell");
+  }
+
+  @Test
+  void runningSessionsAreSmall() {
+    long bytesPerSession = 0;
+    for (int i = 0; i <= WARMUPS; i++) {
+      long bytes = 0;
+      for (int j = 0; j < SHELLS / 10; j++) {
+        final QuizShell shell = builder("q\n").build();
+        final long before = allocatedBytes();
+        shell.run();
+        bytes += allocatedBytes() - before;
+      }
+      bytesPerSession = bytes / (SHELLS / 10);
+    }
+    assertTrue(bytesPerSession < MAX_BYTES_PER_SESSION,
+        bytesPerSession + " bytes per session");
+  }
+
+  private long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static QuizShell.Builder builder(String input) {
+    return QuizShell.builder()
+        .input(new ByteArrayInputStream(
+            input.getBytes(StandardCharsets.UTF_8)))
+        .output(new ByteArrayOutputStream(0))
+        .error(new ByteArrayOutputStream(0))
+        .echo(false);
+  }
+}
+
+// End ShellFootprintTest.java
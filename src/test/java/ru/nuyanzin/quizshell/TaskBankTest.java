@@ -0,0 +1,163 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests of the {@link TaskBank} file: tasks written to a bank
+ * are read back from the mapping, damaged files are rejected.
+ */
+class TaskBankTest {
+  private static final long SEED = 5;
+
+  private Path file;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    file = Files.createTempFile("quizshell", ".qtb");
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  void tasksAreReadBack() throws IOException {
+    // operands of 1, 2 and 4 bytes
+    final int[] maxNumbers = {10, 1000, 100_000};
+    final String[] templates = {"_ + _", "_ - _", "_+_*(_-_)"};
+    final int[] counts = {100, 50, 0};
+    final TaskBank bank = write(templates, maxNumbers, counts);
+    assertEquals(3, bank.getSections().size());
+    for (int i = 0; i < templates.length; i++) {
+      final TaskShape shape = TaskShape.compile(templates[i]);
+      final TaskBank.Section section = bank.find(shape, maxNumbers[i]);
+      assertEquals(counts[i], section.size());
+      assertEquals(templates[i], section.getShape().getTemplate());
+      final TaskEngine expected =
+          new TaskEngine(shape, new Random(SEED + i), maxNumbers[i]);
+      final int[] operands = new int[shape.getOperandCount()];
+      for (int j = 0; j < counts[i]; j++) {
+        expected.next();
+        section.read(j, operands);
+        assertArrayEquals(expected.getOperands(), operands);
+      }
+    }
+    assertSame(bank, TaskBank.load(file.toString()));
+  }
+
+  @Test
+  void shapesAreFoundRegardlessOfSpelling() throws IOException {
+    final TaskBank bank = write(
+        new String[] {"_ + _"}, new int[] {10}, new int[] {1});
+    assertEquals(bank.getSections().get(0),
+        bank.find(TaskShape.compile("a+b"), 10));
+    assertNull(bank.find(TaskShape.compile("_ + _"), 11));
+    assertNull(bank.find(TaskShape.compile("_ - _"), 10));
+  }
+
+  @Test
+  void engineSamplesTasksOfSection() throws IOException {
+    final TaskBank bank = write(
+        new String[] {"_ * _"}, new int[] {300}, new int[] {20});
+    final TaskShape shape = TaskShape.compile("_ * _");
+    final TaskEngine engine = new TaskEngine(
+        shape, new Random(1), 300, bank.find(shape, 300));
+    for (int i = 0; i < 100; i++) {
+      engine.next();
+      final int[] operands = engine.getOperands();
+      assertEquals(operands[0] * operands[1], engine.getResult());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 4, 11, 12, 20, 40, 60})
+  void truncatedBanksAreRejected(int length) throws IOException {
+    final byte[] bytes = bytes(
+        new String[] {"_ + _", "_ - _"}, new int[] {1000, 1000},
+        new int[] {10, 10});
+    Files.write(file, Arrays.copyOf(bytes, length));
+    assertWrongFormat();
+  }
+
+  @Test
+  void lastRecordTruncatedIsRejected() throws IOException {
+    final byte[] bytes = bytes(
+        new String[] {"_ + _"}, new int[] {1000}, new int[] {10});
+    Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+    assertWrongFormat();
+  }
+
+  @Test
+  void unknownVersionIsRejected() throws IOException {
+    final byte[] bytes = bytes(
+        new String[] {"_ + _"}, new int[] {10}, new int[] {10});
+    ByteBuffer.wrap(bytes).putInt(4, 2);
+    Files.write(file, bytes);
+    assertWrongFormat();
+  }
+
+  @Test
+  void wrongFieldsAreRejected() throws IOException {
+    final byte[] bytes = bytes(
+        new String[] {"_ + _"}, new int[] {10}, new int[] {10});
+    // width of operands follows the template and the maximum number
+    final int width = 12 + 2 + "_ + _".length() + 4;
+    bytes[width] = 3;
+    Files.write(file, bytes);
+    assertWrongFormat();
+  }
+
+  @Test
+  void foreignFileIsRejected() throws IOException {
+    Files.write(file, "timestamp,shape\n".getBytes(StandardCharsets.UTF_8));
+    assertWrongFormat();
+  }
+
+  private void assertWrongFormat() {
+    final QuizShellException e = assertThrows(QuizShellException.class,
+        () -> TaskBank.load(file.toString()));
+    assertEquals(QuizShellException.Category.FILE, e.getCategory());
+    assertEquals(Loc.getLocMessage("task-bank-wrong-format",
+        file.toAbsolutePath().normalize()), e.getMessage());
+  }
+
+  private TaskBank write(String[] templates, int[] maxNumbers, int[] counts)
+      throws IOException {
+    Files.write(file, bytes(templates, maxNumbers, counts));
+    return TaskBank.load(file.toString());
+  }
+
+  private static byte[] bytes(String[] templates, int[] maxNumbers,
+      int[] counts) throws IOException {
+    final TaskEngine[] engines = new TaskEngine[templates.length];
+    for (int i = 0; i < templates.length; i++) {
+      engines[i] = new TaskEngine(TaskShape.compile(templates[i]),
+          new Random(SEED + i), maxNumbers[i]);
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TaskBank.write(out, Arrays.asList(engines), counts);
+    return out.toByteArray();
+  }
+}
+
+// End TaskBankTest.java
@@ -0,0 +1,107 @@
+package ru.nuyanzin.quizshell;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Benchmark of the generation of tasks of compiled shapes: attempts
+ * and allocated bytes per task.
+ *
+ * <p>Right operands of {@code -} and {@code /} which are single slots
+ * are picked from the left value, so shapes having only such operators
+ * never generate a task again. Other shapes, e.g. {@code _ - (_ + _)},
+ * are generated again until a task is valid. Either way generation
+ * does not allocate, so multi-operand shapes cost the same per operand
+ * as the two-operand {@code plus} and {@code minus}.
+ */
+class TaskGenerationBenchmarkTest {
+  private static final int MAX_NUMBER = 100;
+  private static final int TASKS = 100_000;
+  private static final int WARMUPS = 3;
+
+  /**
+   * Bytes per task the generation should not exceed.
+   */
+  private static final double MAX_BYTES_PER_TASK = 1;
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "_ + _",
+      "_ - _",
+      "_ / _",
+      "_ + _ * (_ - _)",
+      "(_ + _) - _",
+      "_ * _ / _ - _"})
+  void shapesWithSingleSlotRightOperandsAreNotRetried(String template) {
+    assertEquals(0, invalidTasks(TaskShape.compile(template)), template);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "_ - (_ + _)",
+      "_ / (_ - _)",
+      "_ - _ / _"})
+  void otherShapesAreRetried(String template) {
+    final int invalid = invalidTasks(TaskShape.compile(template));
+    assertTrue(invalid > 0 && invalid < TASKS, template + ": " + invalid);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "_ + _",
+      "_ - _",
+      "_ + _ * (_ - _)",
+      "_ - (_ + _)"})
+  void generationDoesNotAllocate(String template) {
+    assumeTrue(ManagementFactory.getThreadMXBean()
+        instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    final TaskEngine engine = new TaskEngine(
+        TaskShape.compile(template), new Random(1), MAX_NUMBER);
+    for (int i = 0; i < WARMUPS; i++) {
+      generate(engine);
+    }
+    final long id = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(id);
+    generate(engine);
+    final double bytesPerTask =
+        (double) (threads.getThreadAllocatedBytes(id) - before) / TASKS;
+    assertTrue(bytesPerTask < MAX_BYTES_PER_TASK,
+        template + ": " + bytesPerTask + " bytes per task");
+  }
+
+  /**
+   * Number of generated tasks which are not valid and are generated again.
+   */
+  private static int invalidTasks(TaskShape shape) {
+    final Random random = new Random(1);
+    final int[] operands = new int[shape.getOperandCount()];
+    final long[] stack = new long[shape.getMaxStackDepth()];
+    int invalid = 0;
+    for (int i = 0; i < TASKS; i++) {
+      if (shape.generate(random, MAX_NUMBER, operands, stack)
+          == TaskShape.INVALID) {
+        invalid++;
+      }
+    }
+    return invalid;
+  }
+
+  private static void generate(TaskEngine engine) {
+    for (int i = 0; i < TASKS; i++) {
+      engine.next();
+    }
+  }
+}
+
+// End TaskGenerationBenchmarkTest.java
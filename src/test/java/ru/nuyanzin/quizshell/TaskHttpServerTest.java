@@ -0,0 +1,207 @@
+package ru.nuyanzin.quizshell;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link TaskHttpServer} against a server on localhost.
+ */
+class TaskHttpServerTest {
+  private static final Pattern OPERANDS =
+      Pattern.compile("\"operands\":\\[(-?\\d+),(-?\\d+)\\]");
+  private static final Pattern SEED = Pattern.compile("\"seed\":(-?\\d+)");
+
+  private static TaskHttpServer server;
+
+  @BeforeAll
+  static void start() throws IOException {
+    server = new TaskHttpServer(0, 2);
+    server.start();
+  }
+
+  @AfterAll
+  static void stop() {
+    server.stop(0);
+  }
+
+  @Test
+  void seededTasksAreDeterministic() throws IOException {
+    final Response first = get("/tasks?op=plus&n=5&max=10&seed=42");
+    final Response second = get("/tasks?op=plus&n=5&max=10&seed=42");
+    assertEquals(200, first.code);
+    assertTrue(first.contentType.startsWith("application/json"));
+    assertTrue(first.body.contains("\"seed\":42"), first.body);
+    assertEquals(5, operands(first.body).size());
+    assertEquals(first.body, second.body);
+    assertNotEquals(first.body,
+        get("/tasks?op=plus&n=5&max=10&seed=43").body);
+  }
+
+  @Test
+  void unseededTasksReturnTheirSeed() throws IOException {
+    final Response response = get("/tasks?op=minus&n=7&max=20");
+    assertEquals(200, response.code);
+    final Matcher seed = SEED.matcher(response.body);
+    assertTrue(seed.find(), response.body);
+    assertEquals(response.body,
+        get("/tasks?op=minus&n=7&max=20&seed=" + seed.group(1)).body);
+    for (int[] operands : operands(response.body)) {
+      assertTrue(operands[0] - operands[1] >= 0);
+      assertTrue(operands[0] <= 20 && operands[1] <= 20);
+    }
+  }
+
+  @Test
+  void largeResponsesAreStreamed() throws IOException {
+    final Response response = get(
+        "/tasks?op=plus&n=" + TaskHttpServer.MAX_TASKS + "&max=100&seed=1");
+    assertEquals(200, response.code);
+    assertEquals("chunked", response.transferEncoding);
+    assertEquals(TaskHttpServer.MAX_TASKS, operands(response.body).size());
+  }
+
+  @Test
+  void checkWithGet() throws IOException {
+    final String answers = answers(
+        get("/tasks?op=plus&n=5&max=10&seed=7").body, "plus");
+    final Response response =
+        get("/check?op=plus&n=5&max=10&seed=7&answers=" + answers);
+    assertEquals(200, response.code);
+    assertEquals("chunked", response.transferEncoding);
+    assertTrue(response.body.contains("\"correct\":5,\"total\":5"),
+        response.body);
+    final Response wrong = get(
+        "/check?op=plus&n=3&max=10&seed=7&answers=-1,x");
+    assertEquals(
+        "{\"results\":[false,false,false],\"correct\":0,\"total\":3}\n",
+        wrong.body);
+  }
+
+  @Test
+  void checkWithPost() throws IOException {
+    final String answers = answers(
+        get("/tasks?op=minus&n=" + TaskHttpServer.MAX_TASKS
+            + "&max=50&seed=9").body, "minus");
+    final Response response = post("/check?op=minus&n="
+        + TaskHttpServer.MAX_TASKS + "&max=50&seed=9",
+        answers.replace(',', '\n'));
+    assertEquals(200, response.code);
+    assertTrue(response.body.contains("\"correct\":"
+        + TaskHttpServer.MAX_TASKS + ",\"total\":" + TaskHttpServer.MAX_TASKS),
+        response.body.substring(response.body.length() - 100));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "/tasks?op=times",
+      "/tasks?n=-1",
+      "/tasks?n=10001",
+      "/tasks?n=abc",
+      "/tasks?max=x",
+      "/tasks?seed=1.5",
+      "/check?op=div&answers=1",
+      "/check?n=20000"})
+  void wrongParametersAreBadRequests(String query) throws IOException {
+    final Response response = get(query);
+    assertEquals(400, response.code);
+    assertNull(response.transferEncoding);
+    assertTrue(response.body.startsWith("{\"error\":\""), response.body);
+  }
+
+  /**
+   * Operands of all the tasks of the response.
+   */
+  private static List<int[]> operands(String body) {
+    final List<int[]> operands = new ArrayList<>();
+    final Matcher matcher = OPERANDS.matcher(body);
+    while (matcher.find()) {
+      operands.add(new int[] {
+          Integer.parseInt(matcher.group(1)),
+          Integer.parseInt(matcher.group(2))});
+    }
+    return operands;
+  }
+
+  /**
+   * Correct answers to the tasks of the response.
+   */
+  private static String answers(String body, String op) {
+    final StringBuilder answers = new StringBuilder();
+    for (int[] operands : operands(body)) {
+      if (answers.length() > 0) {
+        answers.append(',');
+      }
+      answers.append(op.equals("plus")
+          ? operands[0] + operands[1] : operands[0] - operands[1]);
+    }
+    return answers.toString();
+  }
+
+  private static Response get(String path) throws IOException {
+    return new Response(open(path));
+  }
+
+  private static Response post(String path, String body) throws IOException {
+    final HttpURLConnection connection = open(path);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+    return new Response(connection);
+  }
+
+  private static HttpURLConnection open(String path) throws IOException {
+    return (HttpURLConnection) new URL(
+        "http://localhost:" + server.getPort() + path).openConnection();
+  }
+
+  /**
+   * Response of the server.
+   */
+  private static final class Response {
+    private final int code;
+    private final String contentType;
+    private final String transferEncoding;
+    private final String body;
+
+    private Response(HttpURLConnection connection) throws IOException {
+      code = connection.getResponseCode();
+      contentType = connection.getContentType();
+      transferEncoding = connection.getHeaderField("Transfer-Encoding");
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (InputStream in = code < 400
+          ? connection.getInputStream() : connection.getErrorStream()) {
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+          out.write(buffer, 0, read);
+        }
+      }
+      body = out.toString(StandardCharsets.UTF_8.name());
+      connection.disconnect();
+    }
+  }
+}
+
+// End TaskHttpServerTest.java
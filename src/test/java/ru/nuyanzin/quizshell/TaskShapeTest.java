@@ -0,0 +1,123 @@
+package ru.nuyanzin.quizshell;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests of {@link TaskShape}: parsing of templates, evaluation,
+ * rendering and generation of valid tasks.
+ */
+class TaskShapeTest {
+  @Test
+  void multiplicationPrecedesAddition() {
+    assertEquals(14, evaluate("_ + _ * _", 2, 3, 4));
+    assertEquals(10, evaluate("_ * _ + _", 2, 3, 4));
+    assertEquals(6, evaluate("_ - _ / _", 8, 4, 2));
+    assertEquals(3, evaluate("_ / _ - _", 8, 2, 1));
+  }
+
+  @Test
+  void operatorsOfSamePrecedenceAreLeftAssociative() {
+    assertEquals(5, evaluate("_ - _ - _", 10, 3, 2));
+    assertEquals(12, evaluate("_ / _ * _", 8, 2, 3));
+    assertEquals(2, evaluate("_ / _ / _", 16, 4, 2));
+  }
+
+  @Test
+  void parenthesesOverridePrecedence() {
+    assertEquals(20, evaluate("(_ + _) * _", 2, 3, 4));
+    assertEquals(9, evaluate("_ - (_ - _)", 10, 3, 2));
+    assertEquals(8, evaluate("_ / (_ / _)", 16, 4, 2));
+    assertEquals(45, evaluate("((_ + _) * (_ - _))", 2, 3, 20, 11));
+    assertEquals(4, evaluate("(((_)))", 4));
+  }
+
+  @Test
+  void invalidTasksAreNotEvaluated() {
+    assertEquals(TaskShape.INVALID, evaluate("_ / _", 7, 0));
+    assertEquals(TaskShape.INVALID, evaluate("_ / _", 7, 2));
+    assertEquals(TaskShape.INVALID,
+        evaluate("_ * _", Integer.MAX_VALUE, 2));
+  }
+
+  @Test
+  void spellingsOfShapeAreNormalized() {
+    final TaskShape shape = TaskShape.compile("a+b*(c-d)");
+    assertEquals("a+b*(c-d)", shape.getTemplate());
+    assertEquals("_ + _ * (_ - _)", shape.getNormalizedTemplate());
+    assertEquals(4, shape.getOperandCount());
+    assertEquals(shape.getNormalizedTemplate(),
+        TaskShape.compile(" _ +_ *( _-_ ) ").getNormalizedTemplate());
+    assertNotEquals(shape.getNormalizedTemplate(),
+        TaskShape.compile("(_ + _) * (_ - _)").getNormalizedTemplate());
+  }
+
+  @Test
+  void tasksAreRenderedWithOperands() {
+    final StringBuilder out = new StringBuilder();
+    TaskShape.compile("a+b*(c-d)").render(new int[] {1, 2, 30, 4}, out);
+    assertEquals("1 + 2 * (30 - 4)", out.toString());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "",
+      "   ",
+      "_ +",
+      "+ _",
+      "_ _",
+      "_ + + _",
+      "(_ + _",
+      "_ + _)",
+      ")_ + _(",
+      "()",
+      "_ (_)",
+      "_ % _",
+      "1 + 2"})
+  void malformedTemplatesAreRejected(String template) {
+    final QuizShellException e = assertThrows(QuizShellException.class,
+        () -> TaskShape.compile(template));
+    assertEquals(QuizShellException.Category.TASK, e.getCategory());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {
+      "_ + _",
+      "_ - _",
+      "_ * _",
+      "_ / _",
+      "_ + _ * (_ - _)",
+      "(_ + _) - _ / _",
+      "_ - (_ + _)",
+      "(_ * _) / (_ + _)"})
+  void generatedTasksAreValid(String template) {
+    final TaskShape shape = TaskShape.compile(template);
+    final TaskEngine engine = new TaskEngine(shape, new Random(1), 20);
+    final long[] stack = new long[shape.getMaxStackDepth()];
+    for (int i = 0; i < 1000; i++) {
+      engine.next();
+      final int[] operands = engine.getOperands();
+      for (int operand : operands) {
+        assertTrue(operand >= 0 && operand < 20, template);
+      }
+      assertTrue(engine.getResult() >= 0, template);
+      assertEquals(engine.getResult(), shape.evaluate(operands, stack));
+    }
+  }
+
+  private static long evaluate(String template, int... operands) {
+    final TaskShape shape = TaskShape.compile(template);
+    assertEquals(operands.length, shape.getOperandCount());
+    return shape.evaluate(operands, new long[shape.getMaxStackDepth()]);
+  }
+}
+
+// End TaskShapeTest.java
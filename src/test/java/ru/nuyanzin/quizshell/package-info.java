@@ -0,0 +1,4 @@
+/**
+ * Tests for quiz shell.
+ */
+package ru.nuyanzin.quizshell;